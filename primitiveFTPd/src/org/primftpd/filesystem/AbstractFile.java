@@ -6,6 +6,7 @@ import org.primftpd.services.PftpdService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -167,6 +168,9 @@ public abstract class AbstractFile<TFileSystemView extends AbstractFileSystemVie
             throws IOException
     {
         logger.trace("[{}] getAttributes()", name);
+        if (!doesExist()) {
+            throw new FileNotFoundException(absPath);
+        }
 
         Map<SshFile.Attribute, Object> attributes = new HashMap<>();
         for (SshFile.Attribute attr : SshFile.Attribute.values()) {
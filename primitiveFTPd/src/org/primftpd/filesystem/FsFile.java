@@ -11,10 +11,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -25,6 +31,8 @@ public abstract class FsFile<TMina, TFileSystemView extends FsFileSystemView>
 	protected final File file;
 	protected final boolean isInjectedDirectory;
 
+	private boolean scanOnClose;
+
 	private final static Map<String, String[]> DIRECTORY_INJECTIONS;
 	static {
 		Map<String, String[]> tmp = new HashMap<>();
@@ -54,13 +62,29 @@ public abstract class FsFile<TMina, TFileSystemView extends FsFileSystemView>
 				file.getAbsolutePath(),
 				file.getName());
 		this.file = file;
-		this.isInjectedDirectory = file.isDirectory() && INJECTIONS_AND_CHILDREN.contains(file.getAbsolutePath());
+		// check the set first, avoids a stat call for every other file
+		this.isInjectedDirectory = INJECTIONS_AND_CHILDREN.contains(file.getAbsolutePath()) && file.isDirectory();
 	}
 
 	protected final MediaScannerClient getMediaScannerClient() {
 		return getFileSystemView().getMediaScannerClient();
 	}
 
+	protected final HashCache getHashCache() {
+		return getFileSystemView().getHashCache();
+	}
+
+	public byte[] getCachedHash(String algorithm) {
+		byte[] result = getHashCache().get(absPath, getSize(), getLastModified(), algorithm);
+		logger.trace("[{}] getCachedHash({}) -> {}", name, algorithm, result != null);
+		return result;
+	}
+
+	public void putCachedHash(String algorithm, long size, long lastModified, byte[] hash) {
+		logger.trace("[{}] putCachedHash({})", name, algorithm);
+		getHashCache().put(absPath, size, lastModified, algorithm, hash);
+	}
+
 	protected abstract TMina createFile(File file);
 
 	@Override
@@ -178,6 +202,7 @@ public abstract class FsFile<TMina, TFileSystemView extends FsFileSystemView>
 		postClientAction(ClientActionEvent.ClientAction.DELETE);
 		boolean success = file.delete();
 		if (success) {
+			getHashCache().invalidate(absPath);
 			getMediaScannerClient().scanFile(file.getAbsolutePath());
 		}
 		return success;
@@ -188,6 +213,8 @@ public abstract class FsFile<TMina, TFileSystemView extends FsFileSystemView>
 		postClientAction(ClientActionEvent.ClientAction.RENAME);
 		boolean success = file.renameTo(new File(destination.getAbsolutePath()));
 		if (success) {
+			getHashCache().invalidate(absPath);
+			getHashCache().invalidate(destination.getAbsolutePath());
 			// remove old file location
 			getMediaScannerClient().scanFile(file.getAbsolutePath());
 			// add new file location
@@ -199,6 +226,10 @@ public abstract class FsFile<TMina, TFileSystemView extends FsFileSystemView>
 	public List<TMina> listFiles() {
 		logger.trace("[{}] listFiles()", name);
 		postClientAction(ClientActionEvent.ClientAction.LIST_DIR);
+		return listChildren();
+	}
+
+	private List<TMina> listChildren() {
 		File[] filesArray = file.listFiles();
 
 		// if the OS did not provide child elements:
@@ -224,6 +255,54 @@ public abstract class FsFile<TMina, TFileSystemView extends FsFileSystemView>
 		return new ArrayList<>(0);
 	}
 
+	public DirectoryStream<TMina> openDirectoryStream() throws IOException {
+		logger.trace("[{}] openDirectoryStream()", name);
+		postClientAction(ClientActionEvent.ClientAction.LIST_DIR);
+
+		final DirectoryStream<Path> paths;
+		try {
+			paths = Files.newDirectoryStream(file.toPath());
+		} catch (IOException e) {
+			// e.g. no permission to list, serve injected directories
+			logger.debug("could not open directory stream, Path: {}, {}", file.getAbsolutePath(), e.getMessage());
+			final List<TMina> children = listChildren();
+			return new DirectoryStream<TMina>() {
+				@Override
+				public Iterator<TMina> iterator() {
+					return children.iterator();
+				}
+
+				@Override
+				public void close() {
+				}
+			};
+		}
+
+		// entries are created one by one while the client reads the directory
+		return new DirectoryStream<TMina>() {
+			@Override
+			public Iterator<TMina> iterator() {
+				final Iterator<Path> iterator = paths.iterator();
+				return new Iterator<TMina>() {
+					@Override
+					public boolean hasNext() {
+						return iterator.hasNext();
+					}
+
+					@Override
+					public TMina next() {
+						return createFile(iterator.next().toFile());
+					}
+				};
+			}
+
+			@Override
+			public void close() throws IOException {
+				paths.close();
+			}
+		};
+	}
+
 	public OutputStream createOutputStream(long offset) throws IOException {
 		logger.trace("[{}] createOutputStream(offset: {}), file: {}",
 				new Object []{
@@ -241,6 +320,9 @@ public abstract class FsFile<TMina, TFileSystemView extends FsFileSystemView>
 			throw new IOException(String.format("Failed to create parent folder(s) '%s'", file.getAbsolutePath()));
 		}
 
+		// content changes, the hashes would not match anymore anyway
+		getHashCache().invalidate(absPath);
+
 		// now create out stream
 		OutputStream os;
 		if (offset == 0) {
@@ -248,20 +330,10 @@ public abstract class FsFile<TMina, TFileSystemView extends FsFileSystemView>
 		} else if (offset == this.file.length()) {
 			os = new FileOutputStream(file, true);
 		} else {
-			try (final RandomAccessFile raf = new RandomAccessFile(this.file, "rw")) {
-				raf.seek(offset);
-				os = new OutputStream() {
-					@Override
-					public void write(int oneByte) throws IOException {
-						raf.write(oneByte);
-					}
-
-					@Override
-					public void close() throws IOException {
-						raf.close();
-					}
-				};
-			}
+			// positioned channel, writes go to disk in bulk instead of byte by byte
+			FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+			channel.position(offset);
+			os = Channels.newOutputStream(channel);
 		}
 
 		return new BufferedOutputStream(os) {
@@ -282,8 +354,44 @@ public abstract class FsFile<TMina, TFileSystemView extends FsFileSystemView>
 		});
 		postClientAction(ClientActionEvent.ClientAction.DOWNLOAD);
 
-		BufferedInputStream bis = new BufferedInputStream(new FileInputStream(file), TracingBufferedOutputStream.BUFFER_SIZE);
-		bis.skip(offset);
-		return bis;
+		FileInputStream fis = new FileInputStream(file);
+		if (offset > 0) {
+			// seek instead of skipping through a buffered stream
+			fis.getChannel().position(offset);
+		}
+		return new BufferedInputStream(fis, TracingBufferedOutputStream.BUFFER_SIZE);
+	}
+
+	public FileChannel createReadChannel() throws IOException {
+		logger.trace("[{}] createReadChannel(), file: {}", name, file.getAbsolutePath());
+		postClientAction(ClientActionEvent.ClientAction.DOWNLOAD);
+
+		return new FileInputStream(file).getChannel();
+	}
+
+	public FileChannel createWriteChannel() throws IOException {
+		logger.trace("[{}] createWriteChannel(), file: {}", name, file.getAbsolutePath());
+		postClientAction(ClientActionEvent.ClientAction.UPLOAD);
+
+		// see createOutputStream()
+		File parent = file.getParentFile();
+		if (parent == null || (!parent.exists() && !parent.mkdirs())) {
+			throw new IOException(String.format("Failed to create parent folder(s) '%s'", file.getAbsolutePath()));
+		}
+
+		getHashCache().invalidate(absPath);
+
+		// channel cannot notify on close, scan when the handle is closed
+		scanOnClose = true;
+		return new RandomAccessFile(file, "rw").getChannel();
+	}
+
+	@Override
+	public void handleClose() throws IOException {
+		super.handleClose();
+		if (scanOnClose) {
+			scanOnClose = false;
+			getMediaScannerClient().scanFile(file.getAbsolutePath());
+		}
 	}
 }
@@ -11,6 +11,7 @@ public abstract class FsFileSystemView<
 		extends AbstractFileSystemView {
 
 	private final MediaScannerClient mediaScannerClient;
+	private final HashCache hashCache;
 
 	protected abstract TFile createFile(File file);
 
@@ -19,12 +20,17 @@ public abstract class FsFileSystemView<
 	public FsFileSystemView(PftpdService pftpdService) {
 		super(pftpdService);
 		this.mediaScannerClient = new MediaScannerClient(pftpdService.getContext());
+		this.hashCache = HashCache.getInstance(pftpdService.getContext());
 	}
 
 	public final MediaScannerClient getMediaScannerClient() {
 		return mediaScannerClient;
 	}
 
+	public final HashCache getHashCache() {
+		return hashCache;
+	}
+
 	private final static Pattern isVolumeIdRegex;
 	static {
 		// Android regex is completely broken, the below pattern is not matched if the string is longer, this is against even the ICU regex spec
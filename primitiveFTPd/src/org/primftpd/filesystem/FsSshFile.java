@@ -1,15 +1,23 @@
 package org.primftpd.filesystem;
 
 import org.apache.sshd.common.Session;
+import org.apache.sshd.common.file.DirectoryStreamSshFile;
+import org.apache.sshd.common.file.HashCachingSshFile;
+import org.apache.sshd.common.file.RandomAccessSshFile;
 import org.apache.sshd.common.file.SshFile;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
-public class FsSshFile extends FsFile<SshFile, FsSshFileSystemView> implements SshFile {
+public class FsSshFile extends FsFile<SshFile, FsSshFileSystemView> implements RandomAccessSshFile, DirectoryStreamSshFile, HashCachingSshFile {
 	private final Session session;
 
 	public FsSshFile(FsSshFileSystemView fileSystemView, File file, Session session) {
@@ -68,6 +76,46 @@ public class FsSshFile extends FsFile<SshFile, FsSshFileSystemView> implements S
 		return result;
 	}
 
+	@Override
+	public Map<SshFile.Attribute, Object> getAttributes(boolean followLinks) throws IOException {
+		logger.trace("[{}] getAttributes()", name);
+
+		// one stat call instead of one per attribute, see SshUtils.getAttribute()
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			// unlike File.exists(), the stat tells a missing file from a missing permission
+			throw e;
+		} catch (IOException e) {
+			logger.trace("[{}] could not read attributes: {}", name, e.getMessage());
+			return super.getAttributes(followLinks);
+		}
+		long lastModified = getFileSystemView().getCorrectedTime(absPath, attrs.lastModifiedTime().toMillis());
+		String owner = session.getUsername();
+
+		Map<SshFile.Attribute, Object> attributes = new EnumMap<>(SshFile.Attribute.class);
+		attributes.put(SshFile.Attribute.Size, attrs.size());
+		attributes.put(SshFile.Attribute.Uid, 1);
+		attributes.put(SshFile.Attribute.Owner, owner);
+		attributes.put(SshFile.Attribute.Gid, 1);
+		attributes.put(SshFile.Attribute.Group, owner);
+		attributes.put(SshFile.Attribute.IsDirectory, attrs.isDirectory());
+		attributes.put(SshFile.Attribute.IsRegularFile, attrs.isRegularFile());
+		// see SshUtils.getAttribute()
+		attributes.put(SshFile.Attribute.IsSymbolicLink, false);
+		// access checks, mode bits do not tell what the app may do on emulated storage
+		attributes.put(SshFile.Attribute.Permissions, SshUtils.getPermissions(
+				isInjectedDirectory || file.canRead(),
+				file.canWrite(),
+				isInjectedDirectory || file.canExecute()));
+		attributes.put(SshFile.Attribute.CreationTime, lastModified);
+		attributes.put(SshFile.Attribute.LastModifiedTime, lastModified);
+		attributes.put(SshFile.Attribute.LastAccessTime, lastModified);
+		attributes.put(SshFile.Attribute.NLink, 0);
+		return attributes;
+	}
+
 	@Override
 	public List<SshFile> listSshFiles() {
 		return listFiles();
@@ -0,0 +1,292 @@
+package org.primftpd.filesystem;
+
+import android.content.Context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers content hashes of files, keyed by path, size, (corrected) modification time
+ * and algorithm, so that sync tools asking for hashes on every run do not make us
+ * read unchanged files again.
+ *
+ * Entries are kept in memory, least recently used ones are dropped beyond
+ * {@link #MAX_BYTES}. They are appended to a log in app storage, which is read on
+ * first lookup and rewritten when it holds too many outdated records.
+ */
+public class HashCache {
+
+    private static final String FILE_NAME = "hash-cache.bin";
+    private static final int FORMAT_VERSION = 1;
+    private static final int MIN_RECORDS_TO_COMPACT = 1000;
+    // block hashes of large files, see SftpSubsystem.checkFileHash()
+    private static final int MAX_HASH_LENGTH = 1024 * 1024;
+    private static final long MAX_BYTES = 4 * 1024 * 1024;
+    // rough memory of an entry besides its path and hash
+    private static final int ENTRY_OVERHEAD = 100;
+
+    private static HashCache instance;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final File file;
+    // path -> algorithm -> entry, least recently used path first
+    private final Map<String, Map<String, Entry>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean loaded;
+    // entries were dropped from memory that are still in the log
+    private boolean evicted;
+    private int live;
+    private long bytes;
+    private int records;
+    private DataOutputStream log;
+
+    private static class Entry {
+        final long size;
+        final long lastModified;
+        final byte[] hash;
+
+        Entry(long size, long lastModified, byte[] hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    HashCache(File file) {
+        this.file = file;
+    }
+
+    public static synchronized HashCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new HashCache(new File(context.getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    public synchronized byte[] get(String path, long size, long lastModified, String algorithm) {
+        ensureLoaded();
+        Map<String, Entry> byAlgorithm = entries.get(path);
+        Entry entry = byAlgorithm != null ? byAlgorithm.get(algorithm) : null;
+        if (entry == null || entry.size != size || entry.lastModified != lastModified) {
+            return null;
+        }
+        return entry.hash;
+    }
+
+    public synchronized void put(String path, long size, long lastModified, String algorithm, byte[] hash) {
+        ensureLoaded();
+        store(path, size, lastModified, algorithm, hash);
+        append(path, size, lastModified, algorithm, hash);
+    }
+
+    private void store(String path, long size, long lastModified, String algorithm, byte[] hash) {
+        Map<String, Entry> byAlgorithm = entries.get(path);
+        if (byAlgorithm == null) {
+            byAlgorithm = new HashMap<>();
+            entries.put(path, byAlgorithm);
+        }
+        Iterator<Map.Entry<String, Entry>> it = byAlgorithm.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> old = it.next();
+            // hashes of an older version of the file are useless now
+            if (old.getKey().equals(algorithm)
+                    || old.getValue().size != size || old.getValue().lastModified != lastModified) {
+                forget(path, old.getValue());
+                it.remove();
+            }
+        }
+        Entry entry = new Entry(size, lastModified, hash);
+        byAlgorithm.put(algorithm, entry);
+        live++;
+        bytes += sizeOf(path, entry);
+        evict();
+    }
+
+    private boolean remove(String path) {
+        Map<String, Entry> byAlgorithm = entries.remove(path);
+        if (byAlgorithm == null) {
+            return false;
+        }
+        for (Entry entry : byAlgorithm.values()) {
+            forget(path, entry);
+        }
+        return true;
+    }
+
+    private void evict() {
+        // the path stored last is the most recently used one, it stays
+        Iterator<Map.Entry<String, Map<String, Entry>>> it = entries.entrySet().iterator();
+        while (bytes > MAX_BYTES && entries.size() > 1) {
+            Map.Entry<String, Map<String, Entry>> eldest = it.next();
+            for (Entry entry : eldest.getValue().values()) {
+                forget(eldest.getKey(), entry);
+            }
+            it.remove();
+            evicted = true;
+        }
+    }
+
+    private void forget(String path, Entry entry) {
+        live--;
+        bytes -= sizeOf(path, entry);
+    }
+
+    private static long sizeOf(String path, Entry entry) {
+        return 2L * path.length() + entry.hash.length + ENTRY_OVERHEAD;
+    }
+
+    /**
+     * Forget all hashes of the given file, e.g. when it is written to. Does not
+     * read the log, the removal is appended to it.
+     */
+    public synchronized void invalidate(String path) {
+        // unless the log is known to hold only what is in memory, the path may be in it
+        if (remove(path) || !loaded || evicted) {
+            // a record without algorithm and hash removes the path
+            append(path, 0, 0, "", new byte[0]);
+        }
+    }
+
+    /**
+     * Closes the log, the next change opens it again.
+     */
+    public synchronized void close() {
+        closeLog();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        // records appended before were written to the file, they are read again
+        records = 0;
+        boolean damaged = false;
+        if (file.exists()) {
+            try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (dis.readInt() == FORMAT_VERSION) {
+                    while (dis.available() > 0) {
+                        String path = dis.readUTF();
+                        long size = dis.readLong();
+                        long lastModified = dis.readLong();
+                        String algorithm = dis.readUTF();
+                        int length = dis.readInt();
+                        if (length < 0 || length > MAX_HASH_LENGTH) {
+                            throw new IOException("bad hash length " + length);
+                        }
+                        byte[] hash = new byte[length];
+                        dis.readFully(hash);
+                        records++;
+                        if (algorithm.isEmpty()) {
+                            remove(path);
+                        } else {
+                            store(path, size, lastModified, algorithm, hash);
+                        }
+                    }
+                }
+            } catch (EOFException e) {
+                // record cut off by a crash, drop it so that new records can be read again
+                damaged = true;
+            } catch (IOException e) {
+                logger.warn("could not read hash cache '{}'", e.toString());
+                damaged = true;
+            }
+        }
+        logger.debug("hash cache loaded, {} entries, {} records", live, records);
+        if (damaged || records == 0 || isStale()) {
+            compact();
+        }
+    }
+
+    private boolean isStale() {
+        return records >= MIN_RECORDS_TO_COMPACT && records > 2 * live;
+    }
+
+    /**
+     * Rewrites the log with the current entries only.
+     */
+    private void compact() {
+        // the log is appended to the file being replaced
+        closeLog();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            dos.writeInt(FORMAT_VERSION);
+            records = 0;
+            for (Map.Entry<String, Map<String, Entry>> byPath : entries.entrySet()) {
+                for (Map.Entry<String, Entry> byAlgorithm : byPath.getValue().entrySet()) {
+                    Entry entry = byAlgorithm.getValue();
+                    writeRecord(dos, byPath.getKey(), entry.size, entry.lastModified, byAlgorithm.getKey(), entry.hash);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("could not write hash cache '{}'", e.toString());
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            logger.warn("could not replace hash cache {}", file);
+            return;
+        }
+        evicted = false;
+    }
+
+    private void append(String path, long size, long lastModified, String algorithm, byte[] hash) {
+        try {
+            if (log == null) {
+                boolean empty = file.length() == 0;
+                log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+                if (empty) {
+                    // invalidated before the log was first read
+                    log.writeInt(FORMAT_VERSION);
+                }
+            }
+            writeRecord(log, path, size, lastModified, algorithm, hash);
+            log.flush();
+        } catch (IOException e) {
+            // the in-memory entries still serve this process
+            logger.warn("could not append to hash cache '{}'", e.toString());
+            closeLog();
+            return;
+        }
+        if (loaded && isStale()) {
+            compact();
+        }
+    }
+
+    private void closeLog() {
+        if (log == null) {
+            return;
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            logger.warn("could not close hash cache '{}'", e.toString());
+        }
+        log = null;
+    }
+
+    private void writeRecord(DataOutputStream dos, String path, long size, long lastModified,
+                             String algorithm, byte[] hash) throws IOException {
+        dos.writeUTF(path);
+        dos.writeLong(size);
+        dos.writeLong(lastModified);
+        dos.writeUTF(algorithm);
+        dos.writeInt(hash.length);
+        dos.write(hash);
+        records++;
+    }
+}
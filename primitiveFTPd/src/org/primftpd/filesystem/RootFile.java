@@ -136,6 +136,16 @@ public abstract class RootFile<TMina, TFileSystemView extends RootFileSystemView
         return success;
     }
 
+    public boolean copy(AbstractFile<TFileSystemView> destination) {
+        logger.trace("[{}] copy({})", name, destination.getAbsolutePath());
+        postClientAction(ClientActionEvent.ClientAction.UPLOAD);
+        boolean success = runCommand("cp " + escapePath(absPath) + " " + escapePath(destination.getAbsolutePath()));
+        if (success) {
+            getMediaScannerClient().scanFile(destination.getAbsolutePath());
+        }
+        return success;
+    }
+
     public boolean move(AbstractFile<TFileSystemView> destination) {
         logger.trace("[{}] move({})", name, destination.getAbsolutePath());
         postClientAction(ClientActionEvent.ClientAction.RENAME);
@@ -1,9 +1,11 @@
 package org.primftpd.filesystem;
 
 import org.apache.sshd.common.Session;
+import org.apache.sshd.common.file.CopyableSshFile;
 import org.apache.sshd.common.file.SshFile;
 import org.primftpd.pojo.LsOutputBean;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -12,7 +14,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-public class RootSshFile extends RootFile<SshFile, RootSshFileSystemView> implements SshFile {
+public class RootSshFile extends RootFile<SshFile, RootSshFileSystemView> implements CopyableSshFile {
 
     private final Session session;
 
@@ -35,6 +37,17 @@ public class RootSshFile extends RootFile<SshFile, RootSshFileSystemView> implem
         return super.move((RootSshFile)target);
     }
 
+    @Override
+    public boolean copyTo(SshFile destination) throws IOException {
+        if (!(destination instanceof RootSshFile)) {
+            return false;
+        }
+        if (!super.copy((RootSshFile)destination)) {
+            throw new IOException("Failed to copy file");
+        }
+        return true;
+    }
+
     @Override
     public String readSymbolicLink() {
         logger.trace("[{}] readSymbolicLink()", name);
@@ -106,6 +119,9 @@ public class RootSshFile extends RootFile<SshFile, RootSshFileSystemView> implem
             throws IOException
     {
         logger.trace("[{}] getAttributes()", name);
+        if (!doesExist()) {
+            throw new FileNotFoundException(absPath);
+        }
 
         Map<SshFile.Attribute, Object> attributes = new HashMap<>();
         for (SshFile.Attribute attr : Attribute.values()) {
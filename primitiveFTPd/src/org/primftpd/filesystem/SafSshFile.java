@@ -1,6 +1,7 @@
 package org.primftpd.filesystem;
 
 import org.apache.sshd.common.Session;
+import org.apache.sshd.common.file.HighLatencySshFile;
 import org.apache.sshd.common.file.SshFile;
 
 import java.io.IOException;
@@ -8,7 +9,8 @@ import java.util.List;
 
 import androidx.documentfile.provider.DocumentFile;
 
-public class SafSshFile extends SafFile<SshFile, SafSshFileSystemView> implements SshFile {
+// every attribute is a query of the document provider
+public class SafSshFile extends SafFile<SshFile, SafSshFileSystemView> implements HighLatencySshFile {
 
     private final Session session;
 
@@ -31,28 +31,10 @@ class SshUtils {
                 // as there is no proper sym link support in java 7, just return false, see GH issue #68
                 return false;
             case Permissions:
-                boolean read = sshFile.isReadable();
-                boolean write = sshFile.isWritable();
-                boolean exec = sshFile.isExecutable();
-                Set<SshFile.Permission> tmp = new HashSet<>();
-                if (read) {
-                    tmp.add(SshFile.Permission.UserRead);
-                    tmp.add(SshFile.Permission.GroupRead);
-                    tmp.add(SshFile.Permission.OthersRead);
-                }
-                if (write) {
-                    tmp.add(SshFile.Permission.UserWrite);
-                    tmp.add(SshFile.Permission.GroupWrite);
-                    tmp.add(SshFile.Permission.OthersWrite);
-                }
-                if (exec) {
-                    tmp.add(SshFile.Permission.UserExecute);
-                    tmp.add(SshFile.Permission.GroupExecute);
-                    tmp.add(SshFile.Permission.OthersExecute);
-                }
-                return tmp.isEmpty()
-                        ? EnumSet.noneOf(SshFile.Permission.class)
-                        : EnumSet.copyOf(tmp);
+                return getPermissions(
+                        sshFile.isReadable(),
+                        sshFile.isWritable(),
+                        sshFile.isExecutable());
             case CreationTime:
                 // TODO ssh creation time
                 return sshFile.getLastModified();
@@ -68,6 +50,28 @@ class SshUtils {
         }
     }
 
+    static EnumSet<SshFile.Permission> getPermissions(boolean read, boolean write, boolean exec) {
+        Set<SshFile.Permission> tmp = new HashSet<>();
+        if (read) {
+            tmp.add(SshFile.Permission.UserRead);
+            tmp.add(SshFile.Permission.GroupRead);
+            tmp.add(SshFile.Permission.OthersRead);
+        }
+        if (write) {
+            tmp.add(SshFile.Permission.UserWrite);
+            tmp.add(SshFile.Permission.GroupWrite);
+            tmp.add(SshFile.Permission.OthersWrite);
+        }
+        if (exec) {
+            tmp.add(SshFile.Permission.UserExecute);
+            tmp.add(SshFile.Permission.GroupExecute);
+            tmp.add(SshFile.Permission.OthersExecute);
+        }
+        return tmp.isEmpty()
+                ? EnumSet.noneOf(SshFile.Permission.class)
+                : EnumSet.copyOf(tmp);
+    }
+
     static void setAttribute(SshFile sshFile, SshFile.Attribute attribute, Object value) {
         // TODO ssh set attribute
         switch (attribute) {
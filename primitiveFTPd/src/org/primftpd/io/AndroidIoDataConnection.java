@@ -6,6 +6,8 @@ import org.apache.ftpserver.ftplet.FtpSession;
 import org.apache.ftpserver.impl.DefaultFtpSession;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.ServerDataConnectionFactory;
+import org.apache.sshd.common.util.NoCloseInputStream;
+import org.apache.sshd.common.util.NoCloseOutputStream;
 import org.greenrobot.eventbus.EventBus;
 import org.primftpd.events.DataTransferredEvent;
 import org.slf4j.Logger;
@@ -21,18 +23,23 @@ import java.nio.channels.WritableByteChannel;
 
 public class AndroidIoDataConnection implements DataConnection {
 
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
     private final Logger LOG = LoggerFactory.getLogger(getClass());
 
     private final FtpIoSession session;
     private final ServerDataConnectionFactory factory;
+    private final DataTransferBuffering dataTransferBuffering;
     private SocketChannel dataSocketChannel;
 
     public AndroidIoDataConnection(final SocketChannel dataSocketChannel, final FtpIoSession session,
-                            final ServerDataConnectionFactory factory) {
+                            final ServerDataConnectionFactory factory,
+                            final DataTransferBuffering dataTransferBuffering) {
         LOG.trace("AndroidIoDataConnection()");
         this.session = session;
         this.dataSocketChannel = dataSocketChannel;
         this.factory = factory;
+        this.dataTransferBuffering = dataTransferBuffering;
     }
 
 
@@ -42,10 +49,13 @@ public class AndroidIoDataConnection implements DataConnection {
      * @seeorg.apache.ftpserver.FtpDataConnection2#transferFromClient(java.io.
      * OutputStream)
      */
-    public final long transferFromClient(FtpSession session, final OutputStream out)
+    public final long transferFromClient(FtpSession session, final OutputStream fileOut)
             throws IOException {
         LOG.trace("transferFromClient()");
 
+        // the caller closes the file, closing this only waits for the pending writes
+        final OutputStream out = dataTransferBuffering.writeBehind(new NoCloseOutputStream(fileOut));
+
         WritableByteChannel outStreamBacked = new WritableByteChannel() {
             @Override
             public int write(ByteBuffer src) throws IOException {
@@ -71,10 +81,21 @@ public class AndroidIoDataConnection implements DataConnection {
             }
         };
 
+        boolean transferred = false;
         try {
-            return transfer(session, true, dataSocketChannel, outStreamBacked);
+            long size = transfer(session, true, dataSocketChannel, outStreamBacked);
+            transferred = true;
+            return size;
         } finally {
-            //IoUtils.close(out);
+            // a failed write behind fails the transfer, unless it failed anyway
+            try {
+                out.close();
+            } catch (IOException e) {
+                if (transferred) {
+                    throw e;
+                }
+                LOG.debug("write behind failed after failed transfer: {}", e.toString());
+            }
         }
     }
 
@@ -85,10 +106,13 @@ public class AndroidIoDataConnection implements DataConnection {
      * org.apache.ftpserver.FtpDataConnection2#transferToClient(java.io.InputStream
      * )
      */
-    public final long transferToClient(FtpSession session, final InputStream in)
+    public final long transferToClient(FtpSession session, final InputStream fileIn)
             throws IOException {
         LOG.trace("transferToClient()");
 
+        // the caller closes the file, closing this only stops the read ahead
+        final InputStream in = dataTransferBuffering.readAhead(new NoCloseInputStream(fileIn));
+
         ReadableByteChannel inStreamBacked = new ReadableByteChannel() {
 
             private int lastRead = 0;
@@ -122,7 +146,7 @@ public class AndroidIoDataConnection implements DataConnection {
         try {
             return transfer(session, true, inStreamBacked, dataSocketChannel);
         } finally {
-            //IoUtils.close(out);
+            in.close();
         }
     }
 
@@ -163,7 +187,7 @@ public class AndroidIoDataConnection implements DataConnection {
         long transferredSize = 0L;
 
         boolean isAscii = session.getDataType() == DataType.ASCII;
-        byte[] buff = new byte[4096];
+        byte[] buff = new byte[TRANSFER_BUFFER_SIZE];
 
         LOG.trace("transfer(), ascii: {}", isAscii);
         if (isAscii) {
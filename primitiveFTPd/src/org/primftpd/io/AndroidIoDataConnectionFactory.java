@@ -43,6 +43,8 @@ public class AndroidIoDataConnectionFactory extends IODataConnectionFactory impl
 
     private FtpIoSession session;
 
+    private final DataTransferBuffering dataTransferBuffering;
+
     private ServerSocketChannel serverSocketChannel;
     private SocketChannel dataSocketChannel;
     private ServerSocket serverSocket;
@@ -50,10 +52,12 @@ public class AndroidIoDataConnectionFactory extends IODataConnectionFactory impl
 
     public AndroidIoDataConnectionFactory(
             final FtpServerContext serverContext,
-            final FtpIoSession session) {
+            final FtpIoSession session,
+            final DataTransferBuffering dataTransferBuffering) {
         super(serverContext, session);
         this.session = session;
         this.serverContext = serverContext;
+        this.dataTransferBuffering = dataTransferBuffering;
     }
 
     @Override
@@ -178,7 +182,7 @@ public class AndroidIoDataConnectionFactory extends IODataConnectionFactory impl
 
     @Override
     public DataConnection openConnection() throws Exception {
-        return new AndroidIoDataConnection(createDataSocket(), session, this);
+        return new AndroidIoDataConnection(createDataSocket(), session, this, dataTransferBuffering);
     }
 
     private synchronized SocketChannel createDataSocket() throws Exception {
@@ -0,0 +1,63 @@
+package org.primftpd.io;
+
+import org.apache.sshd.common.util.ReadAheadInputStream;
+import org.apache.sshd.common.util.ThreadUtils;
+import org.apache.sshd.common.util.WriteBehindOutputStream;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Buffers the files of FTP data transfers on threads of the FTP server, so
+ * that storage is read and written while the network is busy. Owned by the
+ * server and shut down when it stops. Transfers started while all threads
+ * are busy access storage themselves.
+ */
+public class DataTransferBuffering {
+
+    public static final int READ_AHEAD_CHUNK_SIZE = 64 * 1024;
+    public static final int WRITE_BEHIND_CHUNK_SIZE = 256 * 1024;
+
+    private static final int THREADS = 4;
+
+    private final int readAheadChunks;
+    private final int writeBehindChunks;
+    private final ExecutorService executor;
+
+    /**
+     * @param readAheadChunks   number of chunks read ahead of downloads, 0 to disable
+     * @param writeBehindChunks number of chunks written behind uploads, 0 to disable
+     */
+    public DataTransferBuffering(int readAheadChunks, int writeBehindChunks) {
+        this.readAheadChunks = Math.max(0, readAheadChunks);
+        this.writeBehindChunks = Math.max(0, writeBehindChunks);
+        this.executor = ThreadUtils.newBoundedCachedThreadPool("ftp-transfer", THREADS);
+    }
+
+    /**
+     * @return the given file stream, read ahead if enabled. Closing the returned
+     *         stream closes the given one.
+     */
+    public InputStream readAhead(InputStream fileIn) {
+        if (readAheadChunks == 0) {
+            return fileIn;
+        }
+        return new ReadAheadInputStream(fileIn, executor, READ_AHEAD_CHUNK_SIZE, readAheadChunks);
+    }
+
+    /**
+     * @return the given file stream, written behind if enabled. Closing the
+     *         returned stream waits for the pending writes and closes the given one.
+     */
+    public OutputStream writeBehind(OutputStream fileOut) {
+        if (writeBehindChunks == 0) {
+            return fileOut;
+        }
+        return new WriteBehindOutputStream(fileOut, executor, WRITE_BEHIND_CHUNK_SIZE, writeBehindChunks);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
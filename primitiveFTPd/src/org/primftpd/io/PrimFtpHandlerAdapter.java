@@ -12,7 +12,8 @@ import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.logging.MdcInjectionFilter;
 
 /**
- * Copied from ftpserver 1.1.4;  changed to use {@link PrimFtpIoSession}.
+ * Copied from ftpserver 1.1.4;  changed to use {@link PrimFtpIoSession}
+ * with the {@link DataTransferBuffering} of the server.
  *
  * @see org.apache.ftpserver.listener.nio.FtpHandlerAdapter
  */
@@ -20,19 +21,23 @@ public class PrimFtpHandlerAdapter extends IoHandlerAdapter {
 
     private final FtpServerContext context;
 
+    private final DataTransferBuffering dataTransferBuffering;
+
     private FtpHandler ftpHandler;
 
     private FtpIoSession getOrCreateFtpSession(IoSession session) {
         FtpIoSession ftpSession = (FtpIoSession) session.getAttribute(FtpIoSession.class.getName());
         if (ftpSession == null) {
-            ftpSession = new PrimFtpIoSession(session, context);
+            ftpSession = new PrimFtpIoSession(session, context, dataTransferBuffering);
             session.setAttribute(FtpIoSession.class.getName(), ftpSession);
         }
         return ftpSession;
     }
 
-    public PrimFtpHandlerAdapter(FtpServerContext context, FtpHandler ftpHandler) {
+    public PrimFtpHandlerAdapter(FtpServerContext context, FtpHandler ftpHandler,
+                                 DataTransferBuffering dataTransferBuffering) {
         this.context = context;
+        this.dataTransferBuffering = dataTransferBuffering;
         this.ftpHandler = ftpHandler;
     }
 
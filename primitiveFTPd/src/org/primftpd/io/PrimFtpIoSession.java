@@ -14,10 +14,13 @@ public class PrimFtpIoSession extends FtpIoSession {
             + "data-connection";
 
     private final FtpServerContext context;
+    private final DataTransferBuffering dataTransferBuffering;
 
-    public PrimFtpIoSession(IoSession wrappedSession, FtpServerContext context) {
+    public PrimFtpIoSession(IoSession wrappedSession, FtpServerContext context,
+                            DataTransferBuffering dataTransferBuffering) {
         super(wrappedSession, context);
         this.context = context;
+        this.dataTransferBuffering = dataTransferBuffering;
    }
 
    public synchronized ServerDataConnectionFactory getDataConnection() {
@@ -25,7 +28,7 @@ public class PrimFtpIoSession extends FtpIoSession {
             return (ServerDataConnectionFactory) getAttribute(ATTRIBUTE_DATA_CONNECTION);
         } else {
             IODataConnectionFactory dataCon = new AndroidIoDataConnectionFactory(
-                    context, this);
+                    context, this, dataTransferBuffering);
             dataCon.setServerControlAddress(((InetSocketAddress) getLocalAddress()).getAddress());
             setAttribute(ATTRIBUTE_DATA_CONNECTION, dataCon);
 
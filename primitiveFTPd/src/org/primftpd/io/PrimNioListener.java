@@ -58,7 +58,7 @@ import org.slf4j.LoggerFactory;
 /**
  * Copied from ftpserver 1.1.4; Changed line 169:
  * {@code
- * acceptor.setHandler(new PrimFtpHandlerAdapter(context, handler));
+ * acceptor.setHandler(new PrimFtpHandlerAdapter(context, handler, dataTransferBuffering));
  * }
  *
  * @see org.apache.ftpserver.listener.nio.NioListener
@@ -77,20 +77,24 @@ public class PrimNioListener extends AbstractListener {
 
     private FtpServerContext context;
 
+    private final DataTransferBuffering dataTransferBuffering;
+
     /**
      * @deprecated Use the constructor with IpFilter instead. Constructor for internal use, do not use directly. Instead
      *             use {@link ListenerFactory}
      */
     @Deprecated
-    public PrimNioListener(String serverAddress, int port, boolean implicitSsl, SslConfiguration sslConfiguration, DataConnectionConfiguration dataConnectionConfig, int idleTimeout, List<InetAddress> blockedAddresses, List<Subnet> blockedSubnets) {
+    public PrimNioListener(String serverAddress, int port, boolean implicitSsl, SslConfiguration sslConfiguration, DataConnectionConfiguration dataConnectionConfig, int idleTimeout, List<InetAddress> blockedAddresses, List<Subnet> blockedSubnets, DataTransferBuffering dataTransferBuffering) {
         super(serverAddress, port, implicitSsl, sslConfiguration, dataConnectionConfig, idleTimeout, blockedAddresses, blockedSubnets);
+        this.dataTransferBuffering = dataTransferBuffering;
     }
 
     /**
      * Constructor for internal use, do not use directly. Instead use {@link ListenerFactory}
      */
-    public PrimNioListener(String serverAddress, int port, boolean implicitSsl, SslConfiguration sslConfiguration, DataConnectionConfiguration dataConnectionConfig, int idleTimeout, SessionFilter sessionFilter) {
+    public PrimNioListener(String serverAddress, int port, boolean implicitSsl, SslConfiguration sslConfiguration, DataConnectionConfiguration dataConnectionConfig, int idleTimeout, SessionFilter sessionFilter, DataTransferBuffering dataTransferBuffering) {
         super(serverAddress, port, implicitSsl, sslConfiguration, dataConnectionConfig, idleTimeout, sessionFilter);
+        this.dataTransferBuffering = dataTransferBuffering;
     }
 
     /**
@@ -165,7 +169,7 @@ public class PrimNioListener extends AbstractListener {
 
             handler.init(context, this);
             // use ours
-            acceptor.setHandler(new PrimFtpHandlerAdapter(context, handler));
+            acceptor.setHandler(new PrimFtpHandlerAdapter(context, handler, dataTransferBuffering));
     
             try {
                 acceptor.bind(address);
@@ -5,6 +5,7 @@ import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 
 import org.apache.ftpserver.impl.PassivePorts;
+import org.apache.sshd.server.sftp.SftpSubsystem;
 import org.primftpd.crypto.HostKeyAlgorithm;
 import org.primftpd.util.Defaults;
 import org.primftpd.util.StringUtils;
@@ -48,6 +49,8 @@ public class LoadPrefsUtil
 	public static final String PREF_KEY_ALLOWED_IPS_PATTERN = "allowedIpsPatternPref";
 	public static final String PREF_QUICK_SETTINGS_REQUIRES_UNLOCK = "quickSettingsRequiresUnlockPref";
 	public static final String PREF_ROOT_COPY_FILES = "rootCopyFilesPref";
+	public static final String PREF_KEY_READ_AHEAD_CHUNKS = "readAheadChunksPref";
+	public static final String PREF_KEY_WRITE_BEHIND_CHUNKS = "writeBehindChunksPref";
 	public static final String PREF_KEY_HOSTKEY_ALGOS = "hostkeyAlgosPref";
 
 	public static final int PORT_DEFAULT_VAL = 12345;
@@ -60,6 +63,10 @@ public class LoadPrefsUtil
 	public static final int IDLE_TIMEOUT_DEFAULT_VAL = 0;
 	static final String IDLE_TIMEOUT_DEFAULT_VAL_STR = String.valueOf(IDLE_TIMEOUT_DEFAULT_VAL);
 	public static final String IDLE_TIMEOUT_SERVER_STOP_DEFAULT_VAL = "30";
+	public static final int READ_AHEAD_CHUNKS_DEFAULT_VAL = SftpSubsystem.DEFAULT_READ_AHEAD_CHUNKS;
+	static final String READ_AHEAD_CHUNKS_DEFAULT_VAL_STR = String.valueOf(READ_AHEAD_CHUNKS_DEFAULT_VAL);
+	public static final int WRITE_BEHIND_CHUNKS_DEFAULT_VAL = SftpSubsystem.DEFAULT_WRITE_BEHIND_CHUNKS;
+	static final String WRITE_BEHIND_CHUNKS_DEFAULT_VAL_STR = String.valueOf(WRITE_BEHIND_CHUNKS_DEFAULT_VAL);
 	public static final Set<String> HOSTKEY_ALGOS_DEFAULTS = Collections.unmodifiableSet(
 			new HashSet<>(Collections.singletonList(HostKeyAlgorithm.ED_25519.getPreferenceValue()))
 	);
@@ -237,6 +244,32 @@ public class LoadPrefsUtil
 				Boolean.TRUE);
 	}
 
+	public static int readAheadChunks(SharedPreferences prefs) {
+		String str = prefs.getString(PREF_KEY_READ_AHEAD_CHUNKS, READ_AHEAD_CHUNKS_DEFAULT_VAL_STR);
+		int val = READ_AHEAD_CHUNKS_DEFAULT_VAL;
+		if (str != null && str.length() > 0) {
+			try {
+				val = Math.max(0, Integer.parseInt(str));
+			} catch (NumberFormatException e) {
+				// never mind
+			}
+		}
+		return val;
+	}
+
+	public static int writeBehindChunks(SharedPreferences prefs) {
+		String str = prefs.getString(PREF_KEY_WRITE_BEHIND_CHUNKS, WRITE_BEHIND_CHUNKS_DEFAULT_VAL_STR);
+		int val = WRITE_BEHIND_CHUNKS_DEFAULT_VAL;
+		if (str != null && str.length() > 0) {
+			try {
+				val = Math.max(0, Integer.parseInt(str));
+			} catch (NumberFormatException e) {
+				// never mind
+			}
+		}
+		return val;
+	}
+
 	public static int loadPortInsecure(
 		Logger logger,
 		SharedPreferences prefs)
@@ -363,6 +396,12 @@ public class LoadPrefsUtil
 		boolean rootCopyFiles = rootCopyFiles(prefs);
 		logger.debug("got rootCopyFiles: {}", rootCopyFiles);
 
+		int readAheadChunks = readAheadChunks(prefs);
+		logger.debug("got readAheadChunks: {}", readAheadChunks);
+
+		int writeBehindChunks = writeBehindChunks(prefs);
+		logger.debug("got writeBehindChunks: {}", writeBehindChunks);
+
 		// create prefsBean
 		return new PrefsBean(
 				userName,
@@ -383,6 +422,8 @@ public class LoadPrefsUtil
 				storageType,
 				safUrl,
 				allowedIpsPattern,
-				rootCopyFiles);
+				rootCopyFiles,
+				readAheadChunks,
+				writeBehindChunks);
 	}
 }
@@ -28,6 +28,8 @@ public class PrefsBean implements Serializable
 	private final String safUrl;
 	private final String allowedIpsPattern;
 	private final boolean rootCopyFiles;
+	private final int readAheadChunks;
+	private final int writeBehindChunks;
 
 	public PrefsBean(
 		String userName,
@@ -48,7 +50,9 @@ public class PrefsBean implements Serializable
 		StorageType storageType,
 		String safUrl,
 		String allowedIpsPattern,
-		boolean rootCopyFiles)
+		boolean rootCopyFiles,
+		int readAheadChunks,
+		int writeBehindChunks)
 	{
 		super();
 		this.userName = userName;
@@ -72,6 +76,8 @@ public class PrefsBean implements Serializable
 		this.safUrl = safUrl;
 		this.allowedIpsPattern = allowedIpsPattern;
 		this.rootCopyFiles = rootCopyFiles;
+		this.readAheadChunks = readAheadChunks;
+		this.writeBehindChunks = writeBehindChunks;
 	}
 
 	public String getUserName() {
@@ -158,4 +164,12 @@ public class PrefsBean implements Serializable
 	public boolean isRootCopyFiles() {
 		return rootCopyFiles;
 	}
+
+	public int getReadAheadChunks() {
+		return readAheadChunks;
+	}
+
+	public int getWriteBehindChunks() {
+		return writeBehindChunks;
+	}
 }
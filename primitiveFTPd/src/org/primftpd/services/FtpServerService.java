@@ -18,6 +18,7 @@ import org.primftpd.filesystem.RoSafFtpFileSystemView;
 import org.primftpd.filesystem.RootFtpFileSystemView;
 import org.primftpd.filesystem.SafFtpFileSystemView;
 import org.primftpd.filesystem.VirtualFtpFileSystemView;
+import org.primftpd.io.DataTransferBuffering;
 import org.primftpd.io.PrimNioListener;
 import org.primftpd.util.RemoteIpChecker;
 import org.primftpd.util.StringUtils;
@@ -32,6 +33,7 @@ import eu.chainfire.libsuperuser.Shell;
 public class FtpServerService extends AbstractServerService
 {
 	private FtpServer ftpServer;
+	private DataTransferBuffering dataTransferBuffering;
 
 	@Override
 	protected ServerServiceHandler createServiceHandler(
@@ -73,6 +75,10 @@ public class FtpServerService extends AbstractServerService
 		} else {
 			logger.info("ssh server already null");
 		}
+		if (dataTransferBuffering != null) {
+			dataTransferBuffering.shutdown();
+			dataTransferBuffering = null;
+		}
 	}
 
 	@Override
@@ -100,6 +106,10 @@ public class FtpServerService extends AbstractServerService
 		});
 		listenerFactory.setDataConnectionConfiguration(dataConConfigFactory.createDataConnectionConfiguration());
 
+		dataTransferBuffering = new DataTransferBuffering(
+				prefsBean.getReadAheadChunks(),
+				prefsBean.getWriteBehindChunks());
+
 		FtpServerFactory serverFactory = new FtpServerFactory();
 		serverFactory.addListener("default", createListener(listenerFactory));
 
@@ -178,6 +188,8 @@ public class FtpServerService extends AbstractServerService
 		} catch (Throwable e) {
 			// note: createServer() throws RuntimeExceptions, too
 			ftpServer = null;
+			dataTransferBuffering.shutdown();
+			dataTransferBuffering = null;
 			handleServerStartError(e);
 			return false;
 		}
@@ -191,7 +203,8 @@ public class FtpServerService extends AbstractServerService
 				listenerFactory.getSslConfiguration(),
 				listenerFactory.getDataConnectionConfiguration(),
 				listenerFactory.getIdleTimeout(),
-				listenerFactory.getSessionFilter()
+				listenerFactory.getSessionFilter(),
+				dataTransferBuffering
 		);
 	}
 }
@@ -7,6 +7,7 @@ import android.os.Message;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
 
+import org.primftpd.filesystem.HashCache;
 import org.primftpd.filesystem.Utils;
 import org.primftpd.prefs.StorageType;
 import org.primftpd.util.NotificationUtil;
@@ -114,6 +115,7 @@ public class ServerServiceHandler extends Handler
 			}
 
 			service.cleanQuickShareTmpDir();
+			HashCache.getInstance(service.getContext()).close();
 		}
 		releaseWakeLock();
 		shellClose();
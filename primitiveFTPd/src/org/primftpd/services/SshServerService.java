@@ -20,7 +20,9 @@ import org.apache.sshd.common.util.KeyUtils;
 import org.apache.sshd.server.Command;
 import org.apache.sshd.server.command.ScpCommandFactory;
 import org.apache.sshd.server.session.SessionFactory;
+import org.apache.sshd.server.sftp.SftpMetrics;
 import org.apache.sshd.server.sftp.SftpSubsystem;
+import org.apache.sshd.server.sftp.SftpThreadPool;
 import org.primftpd.R;
 import org.primftpd.crypto.HostKeyAlgorithm;
 import org.primftpd.crypto.SignatureEd25519;
@@ -54,6 +56,8 @@ import eu.chainfire.libsuperuser.Shell;
 public class SshServerService extends AbstractServerService
 {
 	private SshServer sshServer;
+	private SftpThreadPool sftpThreadPool;
+	private SftpMetrics sftpMetrics;
 
 	@Override
 	protected ServerServiceHandler createServiceHandler(
@@ -117,6 +121,27 @@ public class SshServerService extends AbstractServerService
 			logger.info("exception on server.close().", e);
 		}
 		sshServer = null;
+		if (sftpThreadPool != null) {
+			logger.debug("sftp threads on stop: {}", sftpThreadPool);
+			logger.debug("sftp requests on stop: {}", sftpMetrics);
+			sftpThreadPool.shutdown();
+			sftpThreadPool = null;
+		}
+	}
+
+	/**
+	 * @return threads executing sftp requests, null if the server is not running
+	 */
+	public SftpThreadPool getSftpThreadPool() {
+		return sftpThreadPool;
+	}
+
+	/**
+	 * @return counters and latencies of sftp requests since the server was started,
+	 * kept after it stopped, null if it has not been started
+	 */
+	public SftpMetrics getSftpMetrics() {
+		return sftpMetrics;
 	}
 
 	@Override
@@ -145,7 +170,11 @@ public class SshServerService extends AbstractServerService
 		// enable scp and sftp
 		sshServer.setCommandFactory(new ScpCommandFactory());
 		List<NamedFactory<Command>> factoryList = new ArrayList<>(1);
-		factoryList.add(new SftpSubsystem.Factory());
+		// threads are shared by all sftp channels, sized to the device
+		sftpThreadPool = new SftpThreadPool();
+		SftpSubsystem.Factory sftpFactory = new SftpSubsystem.Factory(sftpThreadPool);
+		sftpMetrics = sftpFactory.getMetrics();
+		factoryList.add(sftpFactory);
 		sshServer.setSubsystemFactories(factoryList);
 
 		// PasswordAuthenticator based on android preferences
@@ -259,6 +288,10 @@ public class SshServerService extends AbstractServerService
 		// sec -> ms
 		sshServer.getProperties().put(SshServer.IDLE_TIMEOUT, String.valueOf(prefsBean.getIdleTimeout() * 1000));
 
+		// buffering of file transfers
+		sshServer.getProperties().put(SftpSubsystem.READ_AHEAD_CHUNKS, String.valueOf(prefsBean.getReadAheadChunks()));
+		sshServer.getProperties().put(SftpSubsystem.WRITE_BEHIND_CHUNKS, String.valueOf(prefsBean.getWriteBehindChunks()));
+
 		try {
 			// XXX preference to enable shell? seems to need root to access /dev/tty
 //			sshServer.setShellFactory(new ProcessShellFactory(new String[] {
@@ -322,6 +355,8 @@ public class SshServerService extends AbstractServerService
 			sshServer = null;
 			handleServerStartError(e);
 		}
+		sftpThreadPool.shutdown();
+		sftpThreadPool = null;
 		return false;
 	}
 
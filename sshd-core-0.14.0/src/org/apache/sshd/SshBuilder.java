@@ -40,13 +40,16 @@ import org.apache.sshd.common.Signature;
 import org.apache.sshd.common.TcpipForwarderFactory;
 import org.apache.sshd.common.cipher.AES128CBC;
 import org.apache.sshd.common.cipher.AES128CTR;
+import org.apache.sshd.common.cipher.AES128GCM;
 import org.apache.sshd.common.cipher.AES192CBC;
 import org.apache.sshd.common.cipher.AES192CTR;
 import org.apache.sshd.common.cipher.AES256CBC;
 import org.apache.sshd.common.cipher.AES256CTR;
+import org.apache.sshd.common.cipher.AES256GCM;
 import org.apache.sshd.common.cipher.ARCFOUR128;
 import org.apache.sshd.common.cipher.ARCFOUR256;
 import org.apache.sshd.common.cipher.BlowfishCBC;
+import org.apache.sshd.common.cipher.ChaCha20Poly1305;
 import org.apache.sshd.common.cipher.TripleDESCBC;
 import org.apache.sshd.common.compression.CompressionNone;
 import org.apache.sshd.common.file.FileSystemFactory;
@@ -58,7 +61,13 @@ import org.apache.sshd.common.mac.HMACMD596;
 import org.apache.sshd.common.mac.HMACSHA1;
 import org.apache.sshd.common.mac.HMACSHA196;
 import org.apache.sshd.common.mac.HMACSHA256;
+import org.apache.sshd.common.mac.HMACSHA256ETM;
 import org.apache.sshd.common.mac.HMACSHA512;
+import org.apache.sshd.common.mac.HMACSHA512ETM;
+import org.apache.sshd.common.mac.UMAC128;
+import org.apache.sshd.common.mac.UMAC128ETM;
+import org.apache.sshd.common.mac.UMAC64;
+import org.apache.sshd.common.mac.UMAC64ETM;
 import org.apache.sshd.common.random.BouncyCastleRandom;
 import org.apache.sshd.common.random.JceRandom;
 import org.apache.sshd.common.random.SingletonRandomFactory;
@@ -147,6 +156,12 @@ public class SshBuilder {
             }
             if (macFactories == null) {
                 macFactories = Arrays.asList(
+                        new UMAC64ETM.Factory(),
+                        new UMAC128ETM.Factory(),
+                        new HMACSHA256ETM.Factory(),
+                        new HMACSHA512ETM.Factory(),
+                        new UMAC64.Factory(),
+                        new UMAC128.Factory(),
                         new HMACSHA256.Factory(),
                         new HMACSHA512.Factory(),
                         new HMACSHA1.Factory(),
@@ -251,6 +266,9 @@ public class SshBuilder {
 
         protected static List<NamedFactory<Cipher>> setUpDefaultCiphers() {
             List<NamedFactory<Cipher>> avail = new LinkedList<NamedFactory<Cipher>>();
+            avail.add(new ChaCha20Poly1305.Factory());
+            avail.add(new AES128GCM.Factory());
+            avail.add(new AES256GCM.Factory());
             avail.add(new AES128CTR.Factory());
             avail.add(new AES192CTR.Factory());
             avail.add(new AES256CTR.Factory());
@@ -297,6 +315,8 @@ public class SshBuilder {
             if (SecurityUtils.isBouncyCastleRegistered()) {
                 if (keyExchangeFactories == null) {
                     keyExchangeFactories = Arrays.asList(
+                            new org.apache.sshd.client.kex.Curve25519SHA256.Factory(),
+                            new org.apache.sshd.client.kex.Curve25519SHA256.LibsshFactory(),
                             new org.apache.sshd.client.kex.DHGEX256.Factory(),
                             new org.apache.sshd.client.kex.DHGEX.Factory(),
                             new org.apache.sshd.client.kex.ECDHP256.Factory(),
@@ -309,6 +329,8 @@ public class SshBuilder {
             } else {
                 if (keyExchangeFactories == null) {
                     keyExchangeFactories = Arrays.asList(
+                            new org.apache.sshd.client.kex.Curve25519SHA256.Factory(),
+                            new org.apache.sshd.client.kex.Curve25519SHA256.LibsshFactory(),
                             new org.apache.sshd.client.kex.DHGEX256.Factory(),
                             new org.apache.sshd.client.kex.DHGEX.Factory(),
                             new org.apache.sshd.client.kex.ECDHP256.Factory(),
@@ -349,6 +371,8 @@ public class SshBuilder {
             if (SecurityUtils.isBouncyCastleRegistered()) {
                 if (keyExchangeFactories == null) {
                     keyExchangeFactories = Arrays.asList(
+                            new org.apache.sshd.server.kex.Curve25519SHA256.Factory(),
+                            new org.apache.sshd.server.kex.Curve25519SHA256.LibsshFactory(),
                             new org.apache.sshd.server.kex.DHGEX256.Factory(),
                             new org.apache.sshd.server.kex.DHGEX.Factory(),
                             new org.apache.sshd.server.kex.ECDHP256.Factory(),
@@ -361,6 +385,8 @@ public class SshBuilder {
             } else {
                 if (keyExchangeFactories == null) {
                     keyExchangeFactories = Arrays.asList(
+                            new org.apache.sshd.server.kex.Curve25519SHA256.Factory(),
+                            new org.apache.sshd.server.kex.Curve25519SHA256.LibsshFactory(),
                             new org.apache.sshd.server.kex.DHGEX256.Factory(),
                             new org.apache.sshd.server.kex.DHGEX.Factory(),
                             new org.apache.sshd.server.kex.ECDHP256.Factory(),
@@ -75,7 +75,7 @@ public abstract class AbstractDHGClient implements KeyExchange {
 
         log.debug("Send SSH_MSG_KEXDH_INIT");
         Buffer buffer = s.createBuffer(SshConstants.SSH_MSG_KEXDH_INIT);
-        buffer.putMPInt(e);
+        dh.putE(buffer, e);
         session.writePacket(buffer);
     }
 
@@ -109,8 +109,8 @@ public abstract class AbstractDHGClient implements KeyExchange {
         buffer.putString(I_C);
         buffer.putString(I_S);
         buffer.putString(K_S);
-        buffer.putMPInt(e);
-        buffer.putMPInt(f);
+        dh.putE(buffer, e);
+        dh.putE(buffer, f);
         buffer.putMPInt(K);
         hash.update(buffer.array(), 0, buffer.available());
         H = hash.digest();
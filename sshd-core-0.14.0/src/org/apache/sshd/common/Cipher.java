@@ -20,7 +20,9 @@ package org.apache.sshd.common;
 
 /**
  * Wrapper for a cryptographic cipher, used either for encryption
- * or decryption.
+ * or decryption. Ciphers protect packets either as an
+ * {@link org.apache.sshd.common.cipher.UnauthenticatedCipher} along with a
+ * {@link Mac}, or as an {@link org.apache.sshd.common.cipher.AeadCipher}.
  *
  * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
  */
@@ -55,14 +57,4 @@ public interface Cipher  {
      */
     void init(Mode mode, byte[] key, byte[] iv) throws Exception;
 
-    /**
-     * Performs in-place encryption or decryption on the given data.
-     * 
-     * @param input
-     * @param inputOffset
-     * @param inputLen
-     * @throws Exception
-     */
-    void update(byte[] input, int inputOffset, int inputLen) throws Exception;
-
 }
@@ -35,4 +35,12 @@ public interface Mac {
     void updateUInt(long foo);
 
     void doFinal(byte[] buf, int offset) throws Exception;
+
+    /**
+     * Whether the mac is computed over the encrypted packet, whose length is
+     * then not encrypted, rather than over the plain packet.
+     *
+     * @return true for the -etm@openssh.com macs
+     */
+    boolean isEncryptThenMac();
 }
@@ -40,8 +40,11 @@ public class ChannelOutputStream extends OutputStream {
     private final byte cmd;
     private final byte[] b = new byte[1];
     private Buffer buffer;
+    private Buffer spare;
     private boolean closed;
     private int bufferLength;
+    // where the data of the buffer starts, moves when the front of a large buffer is sent
+    private int dataOffset;
     private int lastSize;
     private boolean noDelay = false;
 
@@ -61,6 +64,13 @@ public class ChannelOutputStream extends OutputStream {
         return noDelay;
     }
 
+    /**
+     * @return the largest amount of data the peer accepts in one packet
+     */
+    public int getPacketSize() {
+        return remoteWindow.getPacketSize();
+    }
+
     public synchronized void write(int w) throws IOException {
         b[0] = (byte) w;
         write(b, 0, 1);
@@ -114,17 +124,30 @@ public class ChannelOutputStream extends OutputStream {
                 Buffer buf = buffer;
                 int total = bufferLength;
                 int length = Math.min(Math.min(remoteWindow.waitForSpace(), total), remoteWindow.getPacketSize());
-                int pos = buf.wpos();
-                buf.wpos(cmd == SshConstants.SSH_MSG_CHANNEL_EXTENDED_DATA ? 14 : 10);
-                buf.putInt(length);
-                buf.wpos(buf.wpos() + length);
-                if (total == length) {
-                    newBuffer(length);
-                } else {
-                    int leftover = total - length;
-                    newBuffer(Math.max(leftover, length));
-                    buffer.putRawBytes(buf.array(), pos - leftover, leftover);
+                int leftover = total - length;
+                if (leftover >= length) {
+                    // copy the front of a large buffer into its own packet, so
+                    // that each byte is copied at most once
+                    buf = createPacketBuffer(length);
+                    buf.wpos(buf.wpos() - 4);
+                    buf.putInt(length);
+                    buf.putRawBytes(buffer.array(), dataOffset, length);
+                    dataOffset += length;
                     bufferLength = leftover;
+                } else {
+                    // send the buffer in place once the few bytes after the packet are moved
+                    int pos = dataOffset + total;
+                    writeHeader(buf, length);
+                    if (spare != null) {
+                        useBuffer(spare);
+                        spare = null;
+                    } else {
+                        newBuffer(length);
+                    }
+                    if (leftover > 0) {
+                        buffer.putRawBytes(buf.array(), pos - leftover, leftover);
+                        bufferLength = leftover;
+                    }
                 }
                 lastSize = length;
                 remoteWindow.waitAndConsume(length);
@@ -141,6 +164,43 @@ public class ChannelOutputStream extends OutputStream {
         }
     }
 
+    /**
+     * Create a buffer for a data packet of this stream with room for
+     * {@code len} bytes of data. The caller appends the data and sends it
+     * with {@link #writePacketBuffer(Buffer)}, which avoids copying the data
+     * into the stream buffer.
+     *
+     * @param len the number of data bytes the buffer will hold
+     * @return a buffer positioned after the packet header
+     */
+    public Buffer createPacketBuffer(int len) {
+        Buffer buf = channel.getSession().createBuffer(cmd, len <= 0 ? 0 : 12 + len);
+        buf.putInt(channel.getRecipient());
+        if (cmd == SshConstants.SSH_MSG_CHANNEL_EXTENDED_DATA) {
+            buf.putInt(1);
+        }
+        buf.putInt(0);
+        return buf;
+    }
+
+    /**
+     * Send a buffer created by {@link #createPacketBuffer(int)} after any
+     * pending data. Data exceeding the window or packet size is split the same
+     * way as written data.
+     *
+     * @param buf the buffer holding the data
+     * @throws IOException
+     */
+    public synchronized void writePacketBuffer(Buffer buf) throws IOException {
+        flush();
+        // keep the empty stream buffer instead of allocating a new one
+        spare = buffer;
+        buffer = buf;
+        dataOffset = getHeaderEnd();
+        bufferLength = buf.wpos() - dataOffset;
+        flush();
+    }
+
     @Override
     public synchronized void close() throws IOException {
         flush();
@@ -148,13 +208,34 @@ public class ChannelOutputStream extends OutputStream {
     }
 
     private void newBuffer(int size) {
-        buffer = channel.getSession().createBuffer(cmd, size <= 0 ? 0 : 12 + size);
-        buffer.putInt(channel.getRecipient());
+        useBuffer(createPacketBuffer(size));
+    }
+
+    private void useBuffer(Buffer buf) {
+        buffer = buf;
+        bufferLength = 0;
+        dataOffset = getHeaderEnd();
+    }
+
+    private int getHeaderEnd() {
+        return cmd == SshConstants.SSH_MSG_CHANNEL_EXTENDED_DATA ? 18 : 14;
+    }
+
+    /**
+     * Write the packet header in front of the data of the buffer, which may
+     * have moved, and end the buffer after the given amount of data.
+     */
+    private void writeHeader(Buffer buf, int length) {
+        int start = dataOffset - getHeaderEnd() + 5;
+        buf.rpos(start);
+        buf.wpos(start);
+        buf.putByte(cmd);
+        buf.putInt(channel.getRecipient());
         if (cmd == SshConstants.SSH_MSG_CHANNEL_EXTENDED_DATA) {
-            buffer.putInt(1);
+            buf.putInt(1);
         }
-        buffer.putInt(0);
-        bufferLength = 0;
+        buf.putInt(length);
+        buf.wpos(dataOffset + length);
     }
 
 }
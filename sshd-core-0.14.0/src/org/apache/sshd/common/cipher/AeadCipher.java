@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.cipher;
+
+import org.apache.sshd.common.Cipher;
+
+/**
+ * A cipher with authenticated encryption, which protects the integrity of
+ * the packets itself so that no separate MAC is negotiated.
+ *
+ * Such a cipher handles whole packets rather than the bytes given to
+ * {@link UnauthenticatedCipher#update(byte[], int, int)}: the 4 bytes of
+ * the packet length are authenticated but not encrypted as part of the
+ * packet, and the authentication tag follows the packet.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public interface AeadCipher extends Cipher {
+
+    /**
+     * @return the size of the authentication tag following each packet
+     */
+    int getAuthenticationTagSize();
+
+    /**
+     * @return the size the packets, without their length, are padded to
+     *         a multiple of
+     */
+    int getCipherBlockSize();
+
+    /**
+     * Retrieves the length of a received packet from its first 4 bytes,
+     * without modifying them.
+     *
+     * @param seq  the sequence number of the packet
+     * @param data the received data
+     * @param off  the offset of the packet
+     * @return the packet length
+     * @throws Exception
+     */
+    int getPacketLength(long seq, byte[] data, int off) throws Exception;
+
+    /**
+     * Encrypts a packet in place and writes its authentication tag after it.
+     *
+     * @param seq  the sequence number of the packet
+     * @param data the packet
+     * @param off  the offset of the packet length
+     * @param len  the packet length, i.e. the number of bytes after the 4 bytes of the length
+     * @throws Exception
+     */
+    void encrypt(long seq, byte[] data, int off, int len) throws Exception;
+
+    /**
+     * Checks the authentication tag following a packet and decrypts the
+     * packet in place.
+     *
+     * @param seq  the sequence number of the packet
+     * @param data the packet
+     * @param off  the offset of the packet length
+     * @param len  the packet length, as returned by {@link #getPacketLength(long, byte[], int)}
+     * @throws Exception if the packet has not been sent by the peer
+     */
+    void decrypt(long seq, byte[] data, int off, int len) throws Exception;
+
+}
@@ -21,7 +21,6 @@ package org.apache.sshd.common.cipher;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
-import org.apache.sshd.common.Cipher;
 import org.apache.sshd.common.util.SecurityUtils;
 
 /**
@@ -29,7 +28,7 @@ import org.apache.sshd.common.util.SecurityUtils;
  *
  * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
  */
-public class BaseCipher implements Cipher {
+public class BaseCipher implements UnauthenticatedCipher {
 
     protected final int ivsize;
     protected final int bsize;
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.cipher;
+
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.sshd.common.util.SecurityUtils;
+
+/**
+ * Base class for the AES-GCM ciphers as specified by OpenSSH in PROTOCOL,
+ * delegating to the JCE provider.
+ *
+ * The 12 bytes of the nonce are the first bytes of the derived IV, the last
+ * 8 of them being a counter incremented after each packet. The provider
+ * is initialized again with the next nonce after every packet, as it
+ * refuses to encrypt with the same nonce twice.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class BaseGCMCipher implements AeadCipher {
+
+    private static final int NONCE_SIZE = 12;
+    private static final int TAG_SIZE = 16;
+
+    protected final int keySize;
+    protected javax.crypto.Cipher cipher;
+    protected Mode mode;
+    protected SecretKeySpec key;
+    protected byte[] nonce;
+
+    public BaseGCMCipher(int keySize) {
+        this.keySize = keySize;
+    }
+
+    public int getIVSize() {
+        return NONCE_SIZE;
+    }
+
+    /**
+     * @return the key size, as for {@link BaseCipher}, the size of the cipher
+     *         blocks being {@link #getCipherBlockSize()}
+     */
+    public int getBlockSize() {
+        return keySize;
+    }
+
+    public int getCipherBlockSize() {
+        return 16;
+    }
+
+    public int getAuthenticationTagSize() {
+        return TAG_SIZE;
+    }
+
+    public void init(Mode mode, byte[] key, byte[] iv) throws Exception {
+        this.mode = mode;
+        this.key = new SecretKeySpec(BaseCipher.resize(key, keySize), "AES");
+        this.nonce = BaseCipher.resize(iv, NONCE_SIZE).clone();
+        try {
+            cipher = SecurityUtils.getCipher("AES/GCM/NoPadding");
+            initCipher();
+        } catch (Exception e) {
+            cipher = null;
+            throw e;
+        }
+    }
+
+    public int getPacketLength(long seq, byte[] data, int off) {
+        return ((data[off] & 0xff) << 24) | ((data[off + 1] & 0xff) << 16)
+                | ((data[off + 2] & 0xff) << 8) | (data[off + 3] & 0xff);
+    }
+
+    public void encrypt(long seq, byte[] data, int off, int len) throws Exception {
+        cipher.updateAAD(data, off, 4);
+        cipher.doFinal(data, off + 4, len, data, off + 4);
+        nextNonce();
+    }
+
+    public void decrypt(long seq, byte[] data, int off, int len) throws Exception {
+        cipher.updateAAD(data, off, 4);
+        try {
+            cipher.doFinal(data, off + 4, len + TAG_SIZE, data, off + 4);
+        } finally {
+            // the connection is closed anyway, but leave the cipher usable
+            nextNonce();
+        }
+    }
+
+    private void nextNonce() throws Exception {
+        for (int i = NONCE_SIZE - 1; i >= 4; i--) {
+            if (++nonce[i] != 0) {
+                break;
+            }
+        }
+        initCipher();
+    }
+
+    private void initCipher() throws Exception {
+        cipher.init(mode == Mode.Encrypt ? javax.crypto.Cipher.ENCRYPT_MODE : javax.crypto.Cipher.DECRYPT_MODE,
+                    key, new GCMParameterSpec(TAG_SIZE * 8, nonce));
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.cipher;
+
+import java.util.Arrays;
+import javax.crypto.AEADBadTagException;
+
+import org.apache.sshd.common.Cipher;
+import org.apache.sshd.common.NamedFactory;
+import org.bouncycastle.crypto.engines.ChaChaEngine;
+import org.bouncycastle.crypto.macs.Poly1305;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+
+/**
+ * The chacha20-poly1305@openssh.com cipher as specified by OpenSSH in
+ * PROTOCOL.chacha20poly1305, fast without hardware support for AES.
+ *
+ * The 64 bytes of key are two ChaCha20 keys, the second one encrypting the
+ * packet length and the first one the rest of the packet. Both use the
+ * sequence number as nonce. The first block of the key stream of the
+ * first key is the Poly1305 key, the packet is encrypted with the next
+ * blocks, and the tag authenticates the encrypted length and packet.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class ChaCha20Poly1305 implements AeadCipher {
+
+    /**
+     * Named factory for ChaCha20Poly1305 Cipher
+     */
+    public static class Factory implements NamedFactory<Cipher> {
+        public String getName() {
+            return "chacha20-poly1305@openssh.com";
+        }
+        public Cipher create() {
+            return new ChaCha20Poly1305();
+        }
+    }
+
+    private static final int KEY_SIZE = 64;
+    private static final int TAG_SIZE = 16;
+
+    private final ChaChaEngine headerCipher = new ChaChaEngine();
+    private final ChaChaEngine mainCipher = new ChaChaEngine();
+    private final Poly1305 mac = new Poly1305();
+    private final byte[] nonce = new byte[8];
+    private final byte[] polyKey = new byte[64];
+    private final byte[] tag = new byte[TAG_SIZE];
+    private final byte[] length = new byte[4];
+    private KeyParameter headerKey;
+    private KeyParameter mainKey;
+
+    public int getIVSize() {
+        return 0;
+    }
+
+    /**
+     * @return the key size, as for {@link BaseCipher}
+     */
+    public int getBlockSize() {
+        return KEY_SIZE;
+    }
+
+    public int getCipherBlockSize() {
+        return 8;
+    }
+
+    public int getAuthenticationTagSize() {
+        return TAG_SIZE;
+    }
+
+    public void init(Mode mode, byte[] key, byte[] iv) throws Exception {
+        key = BaseCipher.resize(key, KEY_SIZE);
+        mainKey = new KeyParameter(key, 0, 32);
+        headerKey = new KeyParameter(key, 32, 32);
+    }
+
+    public int getPacketLength(long seq, byte[] data, int off) {
+        initCiphers(seq);
+        headerCipher.processBytes(data, off, 4, length, 0);
+        return ((length[0] & 0xff) << 24) | ((length[1] & 0xff) << 16)
+                | ((length[2] & 0xff) << 8) | (length[3] & 0xff);
+    }
+
+    public void encrypt(long seq, byte[] data, int off, int len) throws Exception {
+        initCiphers(seq);
+        headerCipher.processBytes(data, off, 4, data, off);
+        mainCipher.processBytes(data, off + 4, len, data, off + 4);
+        mac.update(data, off, len + 4);
+        mac.doFinal(data, off + 4 + len);
+    }
+
+    public void decrypt(long seq, byte[] data, int off, int len) throws Exception {
+        initCiphers(seq);
+        mac.update(data, off, len + 4);
+        mac.doFinal(tag, 0);
+        if (!org.bouncycastle.util.Arrays.constantTimeAreEqual(TAG_SIZE, tag, 0, data, off + 4 + len)) {
+            throw new AEADBadTagException("Authentication tag mismatch");
+        }
+        headerCipher.processBytes(data, off, 4, data, off);
+        mainCipher.processBytes(data, off + 4, len, data, off + 4);
+    }
+
+    /**
+     * Initializes both ciphers and the mac for the packet, the main cipher
+     * left at the second block of its key stream.
+     */
+    private void initCiphers(long seq) {
+        for (int i = 7; i >= 0; i--) {
+            nonce[i] = (byte) seq;
+            seq >>>= 8;
+        }
+        headerCipher.init(true, new ParametersWithIV(headerKey, nonce));
+        mainCipher.init(true, new ParametersWithIV(mainKey, nonce));
+        Arrays.fill(polyKey, (byte) 0);
+        mainCipher.processBytes(polyKey, 0, polyKey.length, polyKey, 0);
+        mac.init(new KeyParameter(polyKey, 0, 32));
+    }
+
+}
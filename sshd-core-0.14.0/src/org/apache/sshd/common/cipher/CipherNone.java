@@ -29,7 +29,7 @@ import org.apache.sshd.common.NamedFactory;
  *
  * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
  */
-public class CipherNone implements Cipher {
+public class CipherNone implements UnauthenticatedCipher {
 
     /**
      * Named factory for the no-op Cipher
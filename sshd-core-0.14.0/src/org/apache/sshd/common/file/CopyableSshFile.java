@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.file;
+
+import java.io.IOException;
+
+/**
+ * A {@link SshFile} which can copy itself without its content passing
+ * through the SFTP subsystem, e.g. by a command of the backend.
+ */
+public interface CopyableSshFile extends SshFile {
+
+    /**
+     * Copy this file to the destination, replacing its content.
+     * @param destination the file to copy to
+     * @return <code>false</code> if the copy to this destination is not supported,
+     *         in which case the caller copies the content itself
+     * @throws java.io.IOException if the copy failed
+     */
+    boolean copyTo(SshFile destination) throws IOException;
+}
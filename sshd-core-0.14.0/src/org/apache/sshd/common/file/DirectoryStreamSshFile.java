@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.file;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+
+/**
+ * A {@link SshFile} which can list a directory incrementally. The SFTP
+ * subsystem pulls entries from the stream as READDIR requests arrive
+ * instead of listing the whole directory on OPENDIR.
+ */
+public interface DirectoryStreamSshFile extends SshFile {
+
+    /**
+     * Open the directory for listing. Entries are created while iterating,
+     * the order is not specified.
+     * @return A {@link java.nio.file.DirectoryStream} which must be closed after use
+     * @throws java.io.IOException
+     */
+    DirectoryStream<SshFile> openDirectoryStream() throws IOException;
+}
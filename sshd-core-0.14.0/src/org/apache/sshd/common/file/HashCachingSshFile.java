@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.file;
+
+/**
+ * A {@link SshFile} whose backend remembers content hashes, so that the
+ * SFTP check-file extension does not need to read unchanged files again.
+ * Entries are only valid for the size and modification time they were
+ * stored with.
+ */
+public interface HashCachingSshFile extends SshFile {
+
+    /**
+     * Get a stored hash of the whole file.
+     * @param algorithm the hash algorithm, including any block size
+     * @return the hash, or <code>null</code> if none is stored for the
+     *         current size and modification time of the file
+     */
+    byte[] getCachedHash(String algorithm);
+
+    /**
+     * Store the hash of the whole file.
+     * @param algorithm the hash algorithm, including any block size
+     * @param size the size of the file before it was hashed
+     * @param lastModified the result of {@link #getLastModified()} before the file was hashed
+     * @param hash the hash
+     */
+    void putCachedHash(String algorithm, long size, long lastModified, byte[] hash);
+}
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.file;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link SshFile} which supports positional access. The SFTP subsystem
+ * holds the returned channel for the lifetime of a handle and serves
+ * requests at any offset without reopening the file.
+ */
+public interface RandomAccessSshFile extends SshFile {
+
+    /**
+     * Create channel for positional reading.
+     * @return A {@link java.nio.channels.FileChannel} opened for reading
+     * @throws java.io.IOException
+     */
+    FileChannel createReadChannel() throws IOException;
+
+    /**
+     * Create channel for positional writing.
+     * @return A {@link java.nio.channels.FileChannel} opened for reading and writing
+     * @throws java.io.IOException
+     */
+    FileChannel createWriteChannel() throws IOException;
+}
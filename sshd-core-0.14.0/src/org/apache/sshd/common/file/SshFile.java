@@ -81,6 +81,11 @@ public interface SshFile {
      */
     String getName();
 
+    /**
+     * Get the attributes of the file, in as few calls to the file system as possible.
+     * @throws java.io.FileNotFoundException or {@link java.nio.file.NoSuchFileException}
+     *     if the file does not exist
+     */
     Map<Attribute,Object> getAttributes(boolean followLinks) throws IOException;
 
     void setAttributes(Map<Attribute, Object> attributes) throws IOException;
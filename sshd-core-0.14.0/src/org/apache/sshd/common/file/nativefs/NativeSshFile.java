@@ -21,6 +21,7 @@ package org.apache.sshd.common.file.nativefs;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -637,6 +638,9 @@ public class NativeSshFile implements SshFile {
     }
 
     public Map<Attribute, Object> getAttributes(boolean followLinks) throws IOException {
+        if (!doesExist()) {
+            throw new FileNotFoundException(fileName);
+        }
         Map<Attribute, Object> map = new HashMap<Attribute, Object>();
         map.put(Attribute.Size, getSize());
         map.put(Attribute.IsDirectory, isDirectory());
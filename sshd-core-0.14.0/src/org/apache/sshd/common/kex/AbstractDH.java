@@ -21,6 +21,7 @@ package org.apache.sshd.common.kex;
 import java.math.BigInteger;
 
 import org.apache.sshd.common.Digest;
+import org.apache.sshd.common.util.Buffer;
 
 /**
  * Base class for the Diffie-Hellman key agreement.
@@ -57,6 +58,17 @@ public abstract class AbstractDH {
 
     public abstract Digest getHash() throws Exception;
 
+    /**
+     * Put a public value of the exchange, e or f, into the key exchange
+     * message or the exchange hash.
+     *
+     * @param buffer the buffer to put the value into
+     * @param e the value as returned by {@link #getE()} or given to {@link #setF(byte[])}
+     */
+    public void putE(Buffer buffer, byte[] e) {
+        buffer.putMPInt(e);
+    }
+
     // The shared secret returned by KeyAgreement.generateSecret() is
     // a byte array, which can (by chance, roughly 1 out of 256 times)
     // begin with zero byte (some JCE providers might strip this, though).
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.kex;
+
+import java.security.SecureRandom;
+
+import org.apache.sshd.common.Digest;
+import org.apache.sshd.common.digest.SHA256;
+import org.apache.sshd.common.util.Buffer;
+import org.bouncycastle.crypto.agreement.X25519Agreement;
+import org.bouncycastle.crypto.params.X25519PrivateKeyParameters;
+import org.bouncycastle.crypto.params.X25519PublicKeyParameters;
+
+/**
+ * Diffie-Hellman key agreement on Curve25519 as specified in RFC 8731,
+ * a single cheap scalar multiplication on each side.
+ *
+ * The public values are 32 bytes strings rather than integers, and the
+ * shared secret is the 32 bytes of X25519 taken as a big endian integer.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class Curve25519 extends AbstractDH {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private X25519PrivateKeyParameters privateKey;
+    private byte[] e;
+    private byte[] f;
+
+    @Override
+    public byte[] getE() throws Exception {
+        if (e == null) {
+            privateKey = new X25519PrivateKeyParameters(RANDOM);
+            e = privateKey.generatePublicKey().getEncoded();
+        }
+        return e;
+    }
+
+    @Override
+    public void setF(byte[] f) {
+        this.f = f;
+    }
+
+    @Override
+    protected byte[] calculateK() throws Exception {
+        if (f == null || f.length != X25519PublicKeyParameters.KEY_SIZE) {
+            throw new IllegalArgumentException("Invalid Curve25519 public key");
+        }
+        X25519Agreement agreement = new X25519Agreement();
+        agreement.init(privateKey);
+        byte[] secret = new byte[agreement.getAgreementSize()];
+        // fails for a shared secret of all zeros, i.e. a low order public key
+        agreement.calculateAgreement(new X25519PublicKeyParameters(f, 0), secret, 0);
+        return stripLeadingZeroes(secret);
+    }
+
+    @Override
+    public Digest getHash() throws Exception {
+        return new SHA256();
+    }
+
+    @Override
+    public void putE(Buffer buffer, byte[] e) {
+        buffer.putString(e);
+    }
+}
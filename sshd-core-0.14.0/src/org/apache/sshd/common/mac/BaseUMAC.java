@@ -0,0 +1,334 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.mac;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.sshd.common.Mac;
+import org.apache.sshd.common.util.SecurityUtils;
+
+/**
+ * Base class for the UMAC <code>Mac</code>s as specified in RFC 4418 and
+ * used by OpenSSH, much cheaper per byte than HMAC.
+ *
+ * The message is hashed by UHASH in chunks of 1024 bytes, with NH, a
+ * polynomial hash of the chunk results and an inner product hash, once per
+ * 4 bytes of tag, and the result is encrypted with a pad generated with
+ * AES from a nonce. The nonce is the packet sequence number, so unlike
+ * for HMAC, the value given to {@link #updateUInt(long)} is not part of
+ * the hashed message: it must be given before the message.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class BaseUMAC implements Mac {
+
+    private static final int KEY_SIZE = 16;
+    private static final int L1_KEY_LEN = 1024;
+    private static final long M32 = 0xffffffffL;
+    // 2^64 - 59
+    private static final long P64 = 0xffffffffffffffc5L;
+    // 2^36 - 5
+    private static final long P36 = 0x0000000ffffffffbL;
+    private static final long M36 = 0x0000000fffffffffL;
+
+    private final int tagSize;
+    private final int iters;
+    private final boolean etm;
+
+    private Cipher aes;
+    private int[] nhKey;
+    private long[] polyKey;
+    private long[] ipKey;
+    private int[] ipTrans;
+    private final byte[] nonce = new byte[16];
+    private final byte[] pad = new byte[16];
+    private boolean padValid;
+    private int lowBits;
+
+    private final byte[] chunk = new byte[L1_KEY_LEN];
+    private int chunkLength;
+    private long msgLength;
+    private final long[] nh;
+    private final long[] polyAccum;
+
+    public BaseUMAC(int tagSize, boolean etm) {
+        this.tagSize = tagSize;
+        this.iters = tagSize / 4;
+        this.etm = etm;
+        this.nh = new long[iters];
+        this.polyAccum = new long[iters];
+    }
+
+    public int getBlockSize() {
+        return tagSize;
+    }
+
+    public boolean isEncryptThenMac() {
+        return etm;
+    }
+
+    public void init(byte[] key) throws Exception {
+        Cipher kdf = SecurityUtils.getCipher("AES/ECB/NoPadding");
+        kdf.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, 0, KEY_SIZE, "AES"));
+
+        aes = SecurityUtils.getCipher("AES/ECB/NoPadding");
+        aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(kdf(kdf, 0, KEY_SIZE), "AES"));
+
+        byte[] buf = kdf(kdf, 1, L1_KEY_LEN + (iters - 1) * 16);
+        nhKey = new int[buf.length / 4];
+        for (int i = 0; i < nhKey.length; i++) {
+            nhKey[i] = (int) getUInt32(buf, i * 4);
+        }
+
+        buf = kdf(kdf, 2, iters * 24);
+        polyKey = new long[iters];
+        for (int i = 0; i < iters; i++) {
+            // the keys of the 128 bits polynomial hash are unused for messages
+            // shorter than 2^24 bytes, which is way more than a packet
+            polyKey[i] = getUInt64(buf, i * 24) & 0x01ffffff01ffffffL;
+        }
+
+        buf = kdf(kdf, 3, iters * 64);
+        ipKey = new long[iters * 4];
+        for (int i = 0; i < iters; i++) {
+            // the upper half of the hashed value is zero, so only the keys
+            // of the lower half are needed
+            for (int j = 0; j < 4; j++) {
+                ipKey[i * 4 + j] = Long.remainderUnsigned(getUInt64(buf, i * 64 + 32 + j * 8), P36);
+            }
+        }
+
+        buf = kdf(kdf, 4, iters * 4);
+        ipTrans = new int[iters];
+        for (int i = 0; i < iters; i++) {
+            ipTrans[i] = (int) getUInt32(buf, i * 4);
+        }
+
+        padValid = false;
+        reset();
+    }
+
+    public void updateUInt(long seq) {
+        // the nonce is the 64 bits sequence number, the pad is generated
+        // for the nonce without its low bits and reused for those
+        long mask = tagSize == 4 ? 3 : tagSize == 8 ? 1 : 0;
+        lowBits = (int) (seq & mask);
+        seq &= ~mask;
+        boolean same = padValid;
+        for (int i = 7; i >= 0; i--) {
+            byte b = (byte) seq;
+            same &= nonce[i] == b;
+            nonce[i] = b;
+            seq >>>= 8;
+        }
+        padValid = same;
+    }
+
+    public void update(byte[] data, int off, int len) {
+        while (len > 0) {
+            if (chunkLength == L1_KEY_LEN) {
+                hashChunk(chunk, 0, L1_KEY_LEN);
+                chunkLength = 0;
+            }
+            if (chunkLength == 0 && len > L1_KEY_LEN) {
+                // hash full chunks from the data, unless it is the last one
+                hashChunk(data, off, L1_KEY_LEN);
+                off += L1_KEY_LEN;
+                len -= L1_KEY_LEN;
+                continue;
+            }
+            int n = Math.min(len, L1_KEY_LEN - chunkLength);
+            System.arraycopy(data, off, chunk, chunkLength, n);
+            chunkLength += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    public void doFinal(byte[] buf, int offset) throws Exception {
+        // the last chunk, padded to 32 bytes, or 32 zeros for no data
+        int padded = chunkLength == 0 ? 32 : (chunkLength + 31) & ~31;
+        for (int i = chunkLength; i < padded; i++) {
+            chunk[i] = 0;
+        }
+        nh(chunk, 0, padded);
+        for (int i = 0; i < iters; i++) {
+            nh[i] += (long) chunkLength * 8;
+        }
+        msgLength += chunkLength;
+
+        if (!padValid) {
+            aes.doFinal(nonce, 0, 16, pad, 0);
+            padValid = true;
+        }
+        int padOffset = lowBits * tagSize;
+
+        for (int i = 0; i < iters; i++) {
+            long t;
+            if (msgLength <= L1_KEY_LEN) {
+                t = ipAux(i, nh[i]);
+            } else {
+                long accum = poly(polyAccum[i], polyKey[i], nh[i]);
+                if (Long.compareUnsigned(accum, P64) >= 0) {
+                    accum -= P64;
+                }
+                t = ipAux(i, accum);
+            }
+            int y = ipReduce(t) ^ ipTrans[i];
+            int p = padOffset + i * 4;
+            buf[offset + i * 4] = (byte) ((y >>> 24) ^ pad[p]);
+            buf[offset + i * 4 + 1] = (byte) ((y >>> 16) ^ pad[p + 1]);
+            buf[offset + i * 4 + 2] = (byte) ((y >>> 8) ^ pad[p + 2]);
+            buf[offset + i * 4 + 3] = (byte) (y ^ pad[p + 3]);
+        }
+        reset();
+    }
+
+    private void reset() {
+        chunkLength = 0;
+        msgLength = 0;
+        for (int i = 0; i < iters; i++) {
+            polyAccum[i] = 1;
+        }
+    }
+
+    /**
+     * Hash a full chunk which is not the last one into the polynomial hash.
+     */
+    private void hashChunk(byte[] data, int off, int len) {
+        nh(data, off, len);
+        for (int i = 0; i < iters; i++) {
+            polyAccum[i] = poly(polyAccum[i], polyKey[i], nh[i] + (long) len * 8);
+        }
+        msgLength += len;
+    }
+
+    /**
+     * NH of a multiple of 32 bytes, the message words being little endian.
+     */
+    private void nh(byte[] data, int off, int len) {
+        for (int i = 0; i < iters; i++) {
+            nh[i] = 0;
+        }
+        for (int w = 0; w < len / 4; w += 8) {
+            int o = off + w * 4;
+            int m0 = getIntLE(data, o);
+            int m1 = getIntLE(data, o + 4);
+            int m2 = getIntLE(data, o + 8);
+            int m3 = getIntLE(data, o + 12);
+            int m4 = getIntLE(data, o + 16);
+            int m5 = getIntLE(data, o + 20);
+            int m6 = getIntLE(data, o + 24);
+            int m7 = getIntLE(data, o + 28);
+            for (int i = 0, k = w; i < iters; i++, k += 4) {
+                nh[i] += ((m0 + nhKey[k]) & M32) * ((m4 + nhKey[k + 4]) & M32)
+                        + ((m1 + nhKey[k + 1]) & M32) * ((m5 + nhKey[k + 5]) & M32)
+                        + ((m2 + nhKey[k + 2]) & M32) * ((m6 + nhKey[k + 6]) & M32)
+                        + ((m3 + nhKey[k + 3]) & M32) * ((m7 + nhKey[k + 7]) & M32);
+            }
+        }
+    }
+
+    /**
+     * One step of the polynomial hash modulo 2^64 - 59, the words of the
+     * message too large for the modulus being escaped with a marker.
+     */
+    private static long poly(long cur, long key, long data) {
+        if ((data >>> 32) == M32) {
+            cur = polyStep(cur, key, P64 - 1);
+            return polyStep(cur, key, data - 59);
+        }
+        return polyStep(cur, key, data);
+    }
+
+    /**
+     * @return cur * key + data, not fully reduced modulo 2^64 - 59, the
+     *         key having less than 25 bits in each half
+     */
+    private static long polyStep(long cur, long key, long data) {
+        long keyHi = key >>> 32;
+        long keyLo = key & M32;
+        long curHi = cur >>> 32;
+        long curLo = cur & M32;
+        long x = keyHi * curLo + curHi * keyLo;
+        long xLo = x & M32;
+        long xHi = x >>> 32;
+        long res = (keyHi * curHi + xHi) * 59 + keyLo * curLo;
+        long t = xLo << 32;
+        res += t;
+        if (Long.compareUnsigned(res, t) < 0) {
+            res += 59;
+        }
+        res += data;
+        if (Long.compareUnsigned(res, data) < 0) {
+            res += 59;
+        }
+        return res;
+    }
+
+    private long ipAux(int i, long data) {
+        long[] k = ipKey;
+        int j = i * 4;
+        return k[j] * ((data >>> 48) & 0xffff)
+                + k[j + 1] * ((data >>> 32) & 0xffff)
+                + k[j + 2] * ((data >>> 16) & 0xffff)
+                + k[j + 3] * (data & 0xffff);
+    }
+
+    private static int ipReduce(long t) {
+        long ret = (t & M36) + 5 * (t >>> 36);
+        if (ret >= P36) {
+            ret -= P36;
+        }
+        return (int) ret;
+    }
+
+    private byte[] kdf(Cipher kdf, int index, int len) throws Exception {
+        byte[] out = new byte[(len + 15) & ~15];
+        byte[] in = new byte[16];
+        in[7] = (byte) index;
+        for (int i = 0; i < out.length / 16; i++) {
+            in[15] = (byte) (i + 1);
+            in[14] = (byte) ((i + 1) >>> 8);
+            kdf.doFinal(in, 0, 16, out, i * 16);
+        }
+        if (out.length == len) {
+            return out;
+        }
+        byte[] tmp = new byte[len];
+        System.arraycopy(out, 0, tmp, 0, len);
+        return tmp;
+    }
+
+    private static int getIntLE(byte[] b, int off) {
+        return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8)
+                | ((b[off + 2] & 0xff) << 16) | ((b[off + 3] & 0xff) << 24);
+    }
+
+    private static long getUInt32(byte[] b, int off) {
+        return ((b[off] & 0xffL) << 24) | ((b[off + 1] & 0xffL) << 16)
+                | ((b[off + 2] & 0xffL) << 8) | (b[off + 3] & 0xffL);
+    }
+
+    private static long getUInt64(byte[] b, int off) {
+        return (getUInt32(b, off) << 32) | getUInt32(b, off + 4);
+    }
+
+}
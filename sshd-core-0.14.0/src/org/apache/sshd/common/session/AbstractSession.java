@@ -46,6 +46,8 @@ import org.apache.sshd.common.Session;
 import org.apache.sshd.common.SessionListener;
 import org.apache.sshd.common.SshConstants;
 import org.apache.sshd.common.SshException;
+import org.apache.sshd.common.cipher.AeadCipher;
+import org.apache.sshd.common.cipher.UnauthenticatedCipher;
 import org.apache.sshd.common.future.DefaultSshFuture;
 import org.apache.sshd.common.future.SshFuture;
 import org.apache.sshd.common.future.SshFutureListener;
@@ -127,13 +129,17 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
     //
     // SSH packets encoding / decoding support
     //
-    protected Cipher outCipher;
-    protected Cipher inCipher;
+    // the ciphers when they are not authenticated, protected by the macs
+    protected UnauthenticatedCipher outCipher;
+    protected UnauthenticatedCipher inCipher;
     protected int outCipherSize = 8;
     protected int inCipherSize = 8;
     protected Mac outMac;
     protected Mac inMac;
     protected byte[] inMacResult;
+    // the ciphers when they are authenticated, the macs are then unused
+    protected AeadCipher outAead;
+    protected AeadCipher inAead;
     protected Compression outCompression;
     protected Compression inCompression;
     protected long seqi;
@@ -164,6 +170,7 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
     protected volatile long inBytes;
     protected volatile long outBytes;
     protected volatile long lastKeyTime;
+    protected long kexStartTime;
     protected final Queue<PendingWriteFuture> pendingPackets = new LinkedList<PendingWriteFuture>();
 
     protected Service currentService;
@@ -385,6 +392,7 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
                 } else if (!kexState.compareAndSet(KEX_STATE_INIT, KEX_STATE_RUN)) {
                     throw new IllegalStateException("Received SSH_MSG_KEXINIT while key exchange is running");
                 }
+                kexStartTime = System.nanoTime();
                 negotiate();
                 kex = NamedFactory.Utils.create(factoryManager.getKeyExchangeFactories(), negotiated[SshConstants.PROPOSAL_KEX_ALGS]);
                 kex.init(this, serverVersion.getBytes(), clientVersion.getBytes(), I_S, I_C);
@@ -396,6 +404,10 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
                     throw new IllegalStateException("Received command " + cmd + " before key exchange is finished");
                 }
                 receiveNewKeys();
+                if (log.isDebugEnabled()) {
+                    log.debug("Key exchange {} took {} ms", negotiated[SshConstants.PROPOSAL_KEX_ALGS],
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - kexStartTime));
+                }
                 if (reexchangeFuture != null) {
                     reexchangeFuture.setValue(true);
                 }
@@ -603,13 +615,16 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
             // they actually send exactly this amount.
             //
             int bsize = outCipherSize;
-            len += 5;
+            int oldLen = len;
+            len += isOutLengthPlain() ? 1 : 5;
             int pad = (-len) & (bsize - 1);
             if (pad < bsize) {
                 pad += bsize;
             }
-            len = len + pad - 4;
-            if (outMac != null) {
+            len = oldLen + 1 + pad;
+            if (outAead != null) {
+                len += outAead.getAuthenticationTagSize();
+            } else if (outMac != null) {
                 len += outMac.getBlockSize();
             }
             buffer = new Buffer(new byte[Math.max(len, Buffer.DEFAULT_SIZE)], false);
@@ -650,15 +665,16 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
                 outCompression.compress(buffer);
                 len = buffer.available();
             }
-            // Compute padding length
+            // Compute padding length, with an AEAD cipher or an encrypt-then-mac
+            // mac only the data after the length is aligned to the block size
             int bsize = outCipherSize;
             int oldLen = len;
-            len += 5;
+            len += isOutLengthPlain() ? 1 : 5;
             int pad = (-len) & (bsize - 1);
             if (pad < bsize) {
                 pad += bsize;
             }
-            len = len + pad - 4;
+            len = oldLen + 1 + pad;
             // Write 5 header bytes
             buffer.wpos(off);
             buffer.putInt(len);
@@ -666,18 +682,36 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
             // Fill padding
             buffer.wpos(off + oldLen + 5 + pad);
             random.fill(buffer.array(), buffer.wpos() - pad, pad);
-            // Compute mac
-            if (outMac != null) {
+            if (outAead != null) {
+                // Encrypt packet and append the authentication tag
+                buffer.wpos(buffer.wpos() + outAead.getAuthenticationTagSize());
+                outAead.encrypt(seqo, buffer.array(), off, len);
+            } else if (outMac != null && outMac.isEncryptThenMac()) {
+                // Encrypt packet, excluding length
+                if (outCipher != null) {
+                    outCipher.update(buffer.array(), off + 4, len);
+                }
+                // Compute mac of the encrypted packet
                 int macSize = outMac.getBlockSize();
                 int l = buffer.wpos();
                 buffer.wpos(l + macSize);
                 outMac.updateUInt(seqo);
-                outMac.update(buffer.array(), off, l);
+                outMac.update(buffer.array(), off, len + 4);
                 outMac.doFinal(buffer.array(), l);
-            }
-            // Encrypt packet, excluding mac
-            if (outCipher != null) {
-                outCipher.update(buffer.array(), off, len + 4);
+            } else {
+                // Compute mac
+                if (outMac != null) {
+                    int macSize = outMac.getBlockSize();
+                    int l = buffer.wpos();
+                    buffer.wpos(l + macSize);
+                    outMac.updateUInt(seqo);
+                    outMac.update(buffer.array(), off, l - off);
+                    outMac.doFinal(buffer.array(), l);
+                }
+                // Encrypt packet, excluding mac
+                if (outCipher != null) {
+                    outCipher.update(buffer.array(), off, len + 4);
+                }
             }
             // Increment packet id
             seqo = (seqo + 1) & 0xffffffffL;
@@ -706,13 +740,23 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
                 // The read position should always be 0 at this point because we have compacted this buffer
                 assert decoderBuffer.rpos() == 0;
                 // If we have received enough bytes, start processing those
-                if (decoderBuffer.available() > inCipherSize) {
-                    // Decrypt the first bytes
-                    if (inCipher != null) {
-                        inCipher.update(decoderBuffer.array(), 0, inCipherSize);
+                boolean etm = inMac != null && inMac.isEncryptThenMac();
+                if ((inAead != null || etm) ? decoderBuffer.available() >= 4 : decoderBuffer.available() > inCipherSize) {
+                    if (inAead != null) {
+                        // Read packet length, which is not encrypted with the packet
+                        decoderLength = inAead.getPacketLength(seqi, decoderBuffer.array(), 0);
+                        decoderBuffer.rpos(4);
+                    } else if (etm) {
+                        // Read packet length, which is not encrypted
+                        decoderLength = decoderBuffer.getInt();
+                    } else {
+                        // Decrypt the first bytes
+                        if (inCipher != null) {
+                            inCipher.update(decoderBuffer.array(), 0, inCipherSize);
+                        }
+                        // Read packet length
+                        decoderLength = decoderBuffer.getInt();
                     }
-                    // Read packet length
-                    decoderLength = decoderBuffer.getInt();
                     // Check packet length validity
                     if (decoderLength < 5 || decoderLength > (256 * 1024)) {
                         log.info("Error decoding packet (invalid length) {}", decoderBuffer.printHex());
@@ -729,26 +773,34 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
             } else if (decoderState == 1) {
                 // The read position should always be 4 at this point
                 assert decoderBuffer.rpos() == 4;
-                int macSize = inMac != null ? inMac.getBlockSize() : 0;
+                int macSize = inAead != null ? inAead.getAuthenticationTagSize()
+                        : inMac != null ? inMac.getBlockSize() : 0;
                 // Check if the packet has been fully received
                 if (decoderBuffer.available() >= decoderLength + macSize) {
                     byte[] data = decoderBuffer.array();
-                    // Decrypt the remaining of the packet
-                    if (inCipher != null){
-                        inCipher.update(data, inCipherSize, decoderLength + 4 - inCipherSize);
-                    }
-                    // Check the mac of the packet
-                    if (inMac != null) {
-                        // Update mac with packet id
-                        inMac.updateUInt(seqi);
-                        // Update mac with packet data
-                        inMac.update(data, 0, decoderLength + 4);
-                        // Compute mac result
-                        inMac.doFinal(inMacResult, 0);
-                        // Check the computed result with the received mac (just after the packet data)
-                        if (!BufferUtils.equals(inMacResult, 0, data, decoderLength + 4, macSize)) {
+                    if (inAead != null) {
+                        // Check the authentication tag and decrypt the packet
+                        try {
+                            inAead.decrypt(seqi, data, 0, decoderLength);
+                        } catch (Exception e) {
+                            log.debug("Error decrypting packet", e);
                             throw new SshException(SshConstants.SSH2_DISCONNECT_MAC_ERROR, "MAC Error");
                         }
+                    } else if (inMac != null && inMac.isEncryptThenMac()) {
+                        // Check the mac of the encrypted packet before decrypting anything
+                        checkMac(data);
+                        if (inCipher != null) {
+                            inCipher.update(data, 4, decoderLength);
+                        }
+                    } else {
+                        // Decrypt the remaining of the packet
+                        if (inCipher != null) {
+                            inCipher.update(data, inCipherSize, decoderLength + 4 - inCipherSize);
+                        }
+                        // Check the mac of the packet
+                        if (inMac != null) {
+                            checkMac(data);
+                        }
                     }
                     // Increment incoming packet sequence number
                     seqi = (seqi + 1) & 0xffffffffL;
@@ -791,6 +843,33 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
         }
     }
 
+    /**
+     * Check the mac following the packet being decoded.
+     *
+     * @param data the decoder buffer holding the packet
+     * @throws Exception if the mac does not match
+     */
+    private void checkMac(byte[] data) throws Exception {
+        // Update mac with packet id
+        inMac.updateUInt(seqi);
+        // Update mac with packet data
+        inMac.update(data, 0, decoderLength + 4);
+        // Compute mac result
+        inMac.doFinal(inMacResult, 0);
+        // Check the computed result with the received mac (just after the packet data)
+        if (!BufferUtils.equals(inMacResult, 0, data, decoderLength + 4, inMac.getBlockSize())) {
+            throw new SshException(SshConstants.SSH2_DISCONNECT_MAC_ERROR, "MAC Error");
+        }
+    }
+
+    /**
+     * @return whether the length of outgoing packets is sent in plain, which
+     *         is the case with an AEAD cipher or an encrypt-then-mac mac
+     */
+    private boolean isOutLengthPlain() {
+        return outAead != null || outMac != null && outMac.isEncryptThenMac();
+    }
+
     /**
      * Send our identification.
      *
@@ -1014,42 +1093,57 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
         Es2c = resizeKey(Es2c, s2ccipher.getBlockSize(), hash, K, H);
         s2ccipher.init(isServer ? Cipher.Mode.Encrypt : Cipher.Mode.Decrypt, Es2c, IVs2c);
 
-        s2cmac = NamedFactory.Utils.create(factoryManager.getMacFactories(), negotiated[SshConstants.PROPOSAL_MAC_ALGS_STOC]);
-        MACs2c = resizeKey(MACs2c, s2cmac.getBlockSize(), hash, K, H);
-        s2cmac.init(MACs2c);
+        // an authenticated cipher does without the mac
+        if (s2ccipher instanceof AeadCipher) {
+            s2cmac = null;
+        } else {
+            s2cmac = NamedFactory.Utils.create(factoryManager.getMacFactories(), negotiated[SshConstants.PROPOSAL_MAC_ALGS_STOC]);
+            MACs2c = resizeKey(MACs2c, s2cmac.getBlockSize(), hash, K, H);
+            s2cmac.init(MACs2c);
+        }
 
         c2scipher = NamedFactory.Utils.create(factoryManager.getCipherFactories(), negotiated[SshConstants.PROPOSAL_ENC_ALGS_CTOS]);
         Ec2s = resizeKey(Ec2s, c2scipher.getBlockSize(), hash, K, H);
         c2scipher.init(isServer ? Cipher.Mode.Decrypt : Cipher.Mode.Encrypt, Ec2s, IVc2s);
 
-        c2smac = NamedFactory.Utils.create(factoryManager.getMacFactories(), negotiated[SshConstants.PROPOSAL_MAC_ALGS_CTOS]);
-        MACc2s = resizeKey(MACc2s, c2smac.getBlockSize(), hash, K, H);
-        c2smac.init(MACc2s);
+        if (c2scipher instanceof AeadCipher) {
+            c2smac = null;
+        } else {
+            c2smac = NamedFactory.Utils.create(factoryManager.getMacFactories(), negotiated[SshConstants.PROPOSAL_MAC_ALGS_CTOS]);
+            MACc2s = resizeKey(MACc2s, c2smac.getBlockSize(), hash, K, H);
+            c2smac.init(MACc2s);
+        }
 
         s2ccomp = NamedFactory.Utils.create(factoryManager.getCompressionFactories(), negotiated[SshConstants.PROPOSAL_COMP_ALGS_STOC]);
         c2scomp = NamedFactory.Utils.create(factoryManager.getCompressionFactories(), negotiated[SshConstants.PROPOSAL_COMP_ALGS_CTOS]);
 
+        Cipher out;
+        Cipher in;
         if (isServer) {
-            outCipher = s2ccipher;
+            out = s2ccipher;
             outMac = s2cmac;
             outCompression = s2ccomp;
-            inCipher = c2scipher;
+            in = c2scipher;
             inMac = c2smac;
             inCompression = c2scomp;
         } else {
-            outCipher = c2scipher;
+            out = c2scipher;
             outMac = c2smac;
             outCompression = c2scomp;
-            inCipher = s2ccipher;
+            in = s2ccipher;
             inMac = s2cmac;
             inCompression = s2ccomp;
         }
-        outCipherSize = outCipher.getIVSize();
+        outAead = out instanceof AeadCipher ? (AeadCipher) out : null;
+        outCipher = outAead == null ? unauthenticated(out) : null;
+        outCipherSize = outAead != null ? outAead.getCipherBlockSize() : outCipher.getIVSize();
         if (outCompression != null) {
             outCompression.init(Compression.Type.Deflater, -1);
         }
-        inCipherSize = inCipher.getIVSize();
-        inMacResult = new byte[inMac.getBlockSize()];
+        inAead = in instanceof AeadCipher ? (AeadCipher) in : null;
+        inCipher = inAead == null ? unauthenticated(in) : null;
+        inCipherSize = inAead != null ? inAead.getCipherBlockSize() : inCipher.getIVSize();
+        inMacResult = inMac != null ? new byte[inMac.getBlockSize()] : null;
         if (inCompression != null) {
             inCompression.init(Compression.Type.Inflater, -1);
         }
@@ -1125,6 +1219,28 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
         writePacket(buffer);
     }
 
+    /**
+     * @param cipher a cipher that is not an {@link AeadCipher}
+     * @return the cipher, for packets protected by a mac
+     * @throws SshException if the cipher can not encrypt packets on its own
+     */
+    private UnauthenticatedCipher unauthenticated(Cipher cipher) throws SshException {
+        if (!(cipher instanceof UnauthenticatedCipher)) {
+            throw new SshException(SshConstants.SSH2_DISCONNECT_KEY_EXCHANGE_FAILED,
+                    "Unsupported cipher " + cipher.getClass().getName());
+        }
+        return (UnauthenticatedCipher) cipher;
+    }
+
+    /**
+     * @param cipher the name of a negotiated cipher
+     * @return whether the cipher is authenticated and needs no mac
+     */
+    protected boolean isAead(String cipher) {
+        return cipher != null
+                && NamedFactory.Utils.create(factoryManager.getCipherFactories(), cipher) instanceof AeadCipher;
+    }
+
     /**
      * Compute the negotiated proposals by merging the client and
      * server proposal.  The negotiated proposal will be stored in
@@ -1154,8 +1270,10 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
             if (guess[i] == null) {
             	String	message="Unable to negotiate key exchange for " + paramName
             				  + " (client: " + clientParamValue + " / server: " + serverParamValue + ")";
-                // OK if could not negotiate languages
-            	if ((i != SshConstants.PROPOSAL_LANG_CTOS) && (i != SshConstants.PROPOSAL_LANG_STOC)) {
+                // OK if could not negotiate languages, or macs which an authenticated cipher does without
+            	if ((i != SshConstants.PROPOSAL_LANG_CTOS) && (i != SshConstants.PROPOSAL_LANG_STOC)
+            			&& !(i == SshConstants.PROPOSAL_MAC_ALGS_CTOS && isAead(guess[SshConstants.PROPOSAL_ENC_ALGS_CTOS]))
+            			&& !(i == SshConstants.PROPOSAL_MAC_ALGS_STOC && isAead(guess[SshConstants.PROPOSAL_ENC_ALGS_STOC]))) {
             		throw new IllegalStateException(message);
             	} else {
             		if (log.isTraceEnabled()) {
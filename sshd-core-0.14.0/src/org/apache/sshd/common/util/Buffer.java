@@ -230,6 +230,22 @@ public final class Buffer implements Readable {
         return b;
     }
 
+    /**
+     * Read a length prefixed byte array without copying it.
+     * The returned buffer shares the array of this buffer and must only
+     * be read from, its read position and available bytes delimit the data.
+     */
+    public Buffer getBytesSlice() {
+        int len = getInt();
+        if (len < 0) {
+            throw new IllegalStateException("Bad item length: " + len);
+        }
+        ensureAvailable(len);
+        Buffer slice = new Buffer(data, rpos, len, true);
+        rpos += len;
+        return slice;
+    }
+
     public void getRawBytes(byte[] buf) {
         getRawBytes(buf, 0, buf.length);
     }
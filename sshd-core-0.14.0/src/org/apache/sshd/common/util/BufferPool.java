@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sshd.common.Session;
+
+/**
+ * A pool of buffers in a few size classes, so that code handling a steady
+ * flow of packets does not allocate a new array for each of them.
+ * Buffers which grew beyond their size class are not taken back.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class BufferPool {
+
+    /**
+     * Session attribute holding the pool shared by the channels of a session.
+     */
+    public static final Session.AttributeKey<BufferPool> SESSION_POOL = new Session.AttributeKey<BufferPool>();
+
+    public static final int SMALL_SIZE = Buffer.DEFAULT_SIZE;      // status, handle and attrs replies
+    public static final int DATA_SIZE = 32 * 1024 + 1024;          // 32 KB of data plus headers
+    public static final int MAX_SIZE = 256 * 1024 + 1024;          // largest packet
+
+    private static final int[] SIZES = { SMALL_SIZE, DATA_SIZE, MAX_SIZE };
+    private static final int[] MAX_POOLED = { 32, 16, 4 };
+
+    private final List<ArrayDeque<byte[]>> free;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public BufferPool() {
+        free = new ArrayList<ArrayDeque<byte[]>>(SIZES.length);
+        for (int i = 0; i < SIZES.length; i++) {
+            free.add(new ArrayDeque<byte[]>(MAX_POOLED[i]));
+        }
+    }
+
+    /**
+     * Get the pool of the given session, creating it on first use.
+     */
+    public static BufferPool getPool(Session session) {
+        synchronized (session) {
+            BufferPool pool = session.getAttribute(SESSION_POOL);
+            if (pool == null) {
+                pool = new BufferPool();
+                session.setAttribute(SESSION_POOL, pool);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Borrow an empty buffer that can hold at least the given size
+     * without growing. Sizes above {@link #MAX_SIZE} are not pooled.
+     */
+    public Buffer acquire(int size) {
+        int idx = sizeClass(size);
+        if (idx < 0) {
+            misses.incrementAndGet();
+            return new Buffer(size);
+        }
+        byte[] data;
+        ArrayDeque<byte[]> pooled = free.get(idx);
+        synchronized (pooled) {
+            data = pooled.poll();
+        }
+        if (data != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            data = new byte[SIZES[idx]];
+        }
+        return new Buffer(data, false);
+    }
+
+    /**
+     * Return a buffer obtained by {@link #acquire(int)}. The buffer must not
+     * be used anymore afterwards.
+     */
+    public void release(Buffer buffer) {
+        byte[] data = buffer.array();
+        for (int i = 0; i < SIZES.length; i++) {
+            if (data.length == SIZES[i]) {
+                ArrayDeque<byte[]> pooled = free.get(i);
+                synchronized (pooled) {
+                    if (pooled.size() < MAX_POOLED[i]) {
+                        pooled.push(data);
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static int sizeClass(int size) {
+        for (int i = 0; i < SIZES.length; i++) {
+            if (size <= SIZES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -33,6 +33,11 @@ public class NoCloseOutputStream extends FilterOutputStream {
         super(out);
     }
 
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        // not byte by byte as FilterOutputStream does
+        out.write(b, off, len);
+    }
 
     @Override
     public void close() throws IOException {
@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Reads ahead of a sequential reader, so that reading the next data from
+ * the source overlaps with sending the current data.
+ *
+ * The read ahead window starts empty, grows with every read continuing
+ * where the previous one ended, up to the given number of chunks, and is
+ * halved and dropped by a read elsewhere. Chunks are filled one after the
+ * other by a single task on the executor, so the source is never read
+ * concurrently by read ahead, only by a direct read for data not being
+ * read ahead.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class ReadAhead implements Closeable {
+
+    /**
+     * Where the data comes from.
+     */
+    public interface Source {
+        /**
+         * @return the number of bytes read, fewer only at the end of the data,
+         *         or -1 at the end of the data
+         */
+        int read(byte[] data, int off, int len, long position) throws IOException;
+    }
+
+    private static class Chunk {
+        final byte[] data;
+        final long position;
+        int length;
+        boolean filled;
+        boolean discarded;
+        IOException error;
+
+        Chunk(byte[] data, long position) {
+            this.data = data;
+            this.position = position;
+        }
+    }
+
+    private final Source source;
+    private final Executor executor;
+    private final int chunkSize;
+    private final int maxChunks;
+
+    // chunks being read ahead, in order of position, without gaps
+    private final ArrayDeque<Chunk> chunks = new ArrayDeque<Chunk>();
+    private final ArrayDeque<byte[]> free = new ArrayDeque<byte[]>();
+    private int window;
+    private long expected = -1;
+    private boolean eof;
+    private boolean filling;
+    private boolean closed;
+
+    private final Runnable filler = new Runnable() {
+        public void run() {
+            fill();
+        }
+    };
+
+    /**
+     * @param source    the data to read ahead
+     * @param executor  executes the read ahead
+     * @param chunkSize number of bytes read ahead at once
+     * @param maxChunks maximum number of chunks read ahead
+     */
+    public ReadAhead(Source source, Executor executor, int chunkSize, int maxChunks) {
+        this.source = source;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.maxChunks = maxChunks;
+    }
+
+    /**
+     * Read from the given position, from read ahead data where available.
+     *
+     * @return the number of bytes read, fewer only at the end of the data,
+     *         or -1 at the end of the data
+     */
+    public int read(byte[] data, int off, int len, long position) throws IOException {
+        int total = 0;
+        boolean end = false;
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Read ahead closed");
+            }
+            if (position == expected) {
+                window = Math.min(maxChunks, window == 0 ? 1 : window * 2);
+            } else if (expected >= 0) {
+                window /= 2;
+                discard();
+            }
+
+            while (total < len) {
+                long p = position + total;
+                Chunk c = chunks.peekFirst();
+                if (c == null || p < c.position || p >= c.position + chunkSize) {
+                    break;
+                }
+                while (!c.filled) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        throw (InterruptedIOException) new InterruptedIOException().initCause(e);
+                    }
+                }
+                if (c.error != null) {
+                    IOException e = c.error;
+                    discard();
+                    throw e;
+                }
+                int from = (int) (p - c.position);
+                if (from >= c.length) {
+                    // short chunk, the end of the data
+                    end = true;
+                    break;
+                }
+                int n = Math.min(len - total, c.length - from);
+                System.arraycopy(c.data, from, data, off + total, n);
+                total += n;
+                if (from + n == c.length) {
+                    chunks.removeFirst();
+                    recycle(c.data);
+                    if (c.length < chunkSize) {
+                        end = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (total < len && !end) {
+            // not read ahead (yet)
+            int n = source.read(data, off + total, len - total, position + total);
+            if (n > 0) {
+                total += n;
+            } else if (total == 0) {
+                total = -1;
+            }
+        } else if (total == 0 && len > 0) {
+            total = -1;
+        }
+
+        synchronized (this) {
+            expected = position + Math.max(total, 0);
+            schedule();
+        }
+        return total;
+    }
+
+    /**
+     * Drop the read ahead data, e.g. because the source has been written to.
+     */
+    public synchronized void invalidate() {
+        window = 0;
+        expected = -1;
+        discard();
+    }
+
+    public synchronized void close() {
+        closed = true;
+        discard();
+        free.clear();
+        notifyAll();
+    }
+
+    private void schedule() {
+        if (closed || eof || window == 0) {
+            return;
+        }
+        long next = chunks.isEmpty() ? expected : chunks.peekLast().position + chunkSize;
+        while (chunks.size() < window) {
+            chunks.addLast(new Chunk(take(), next));
+            next += chunkSize;
+        }
+        if (!filling) {
+            filling = true;
+            try {
+                executor.execute(filler);
+            } catch (RejectedExecutionException e) {
+                // e.g. shut down, go on without read ahead
+                filling = false;
+                window = 0;
+                discard();
+            }
+        }
+    }
+
+    private void fill() {
+        try {
+            while (true) {
+                Chunk c = null;
+                synchronized (this) {
+                    if (!closed) {
+                        for (Chunk chunk : chunks) {
+                            if (!chunk.filled) {
+                                c = chunk;
+                                break;
+                            }
+                        }
+                    }
+                    if (c == null) {
+                        return;
+                    }
+                }
+
+                int length = 0;
+                IOException error = null;
+                try {
+                    while (length < chunkSize) {
+                        int n = source.read(c.data, length, chunkSize - length, c.position + length);
+                        if (n <= 0) {
+                            break;
+                        }
+                        length += n;
+                    }
+                } catch (IOException e) {
+                    error = e;
+                } catch (Throwable t) {
+                    // e.g. a runtime exception of the file system, the reader must not wait forever
+                    error = new IOException(t);
+                }
+
+                synchronized (this) {
+                    c.length = length;
+                    c.error = error;
+                    c.filled = true;
+                    if (c.discarded) {
+                        recycle(c.data);
+                    } else if (length < chunkSize) {
+                        // nothing to read beyond the end
+                        eof = true;
+                        for (Iterator<Chunk> it = chunks.descendingIterator(); it.hasNext(); ) {
+                            Chunk later = it.next();
+                            if (later == c) {
+                                break;
+                            }
+                            it.remove();
+                            recycle(later.data);
+                        }
+                    }
+                    notifyAll();
+                }
+            }
+        } finally {
+            synchronized (this) {
+                filling = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Drop the read ahead data. Buffers of chunks being filled are
+     * recycled when the filling completes.
+     */
+    private void discard() {
+        for (Chunk c : chunks) {
+            if (c.filled) {
+                recycle(c.data);
+            } else {
+                c.discarded = true;
+            }
+        }
+        chunks.clear();
+        eof = false;
+    }
+
+    private byte[] take() {
+        byte[] data = free.poll();
+        return data != null ? data : new byte[chunkSize];
+    }
+
+    private void recycle(byte[] data) {
+        if (!closed && free.size() < maxChunks) {
+            free.push(data);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executor;
+
+/**
+ * An input stream reading ahead of its reader, see {@link ReadAhead}.
+ * Closing it stops the read ahead and closes the underlying stream.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class ReadAheadInputStream extends FilterInputStream {
+
+    private final ReadAhead readAhead;
+    private long position;
+
+    public ReadAheadInputStream(final InputStream in, Executor executor, int chunkSize, int maxChunks) {
+        super(in);
+        // a stream is read sequentially, so the position is only for the read ahead
+        this.readAhead = new ReadAhead(new ReadAhead.Source() {
+            public int read(byte[] data, int off, int len, long position) throws IOException {
+                return in.read(data, off, len);
+            }
+        }, executor, chunkSize, maxChunks);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n > 0 ? b[0] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int n = readAhead.read(b, off, len, position);
+        if (n > 0) {
+            position += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // read over the data rather than moving the underlying stream
+        byte[] b = new byte[(int) Math.min(8192, Math.max(n, 0))];
+        long skipped = 0;
+        while (skipped < n) {
+            int l = read(b, 0, (int) Math.min(b.length, n - skipped));
+            if (l < 0) {
+                break;
+            }
+            skipped += l;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return 0;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        readAhead.close();
+        super.close();
+    }
+}
@@ -23,6 +23,8 @@ import java.security.KeyPairGenerator;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
+import java.security.Provider;
+import java.security.Security;
 import java.security.Signature;
 import javax.crypto.Cipher;
 import javax.crypto.KeyAgreement;
@@ -35,6 +37,7 @@ import org.slf4j.LoggerFactory;
 public class SecurityUtils {
 
     private static final Logger LOG = LoggerFactory.getLogger(SecurityUtils.class);
+    private static final String BOUNCY_CASTLE = "BC";
 
     public static boolean isBouncyCastleRegistered() {
         return true;
@@ -50,8 +53,27 @@ public class SecurityUtils {
         return (KeyFactory)result;
     }
 
+    /**
+     * Ciphers preferably come from a provider other than Bouncy Castle, which
+     * applications register first for its key formats, as the platform
+     * providers use the AES instructions of the CPU.
+     */
     public static synchronized Cipher getCipher(String transformation) throws NoSuchAlgorithmException, NoSuchPaddingException, NoSuchProviderException {
-        Cipher result = Cipher.getInstance(transformation);
+        Cipher result = null;
+        for (Provider provider : Security.getProviders()) {
+            if (BOUNCY_CASTLE.equals(provider.getName())) {
+                continue;
+            }
+            try {
+                result = Cipher.getInstance(transformation, provider);
+                break;
+            } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+                // try the next one
+            }
+        }
+        if (result == null) {
+            result = Cipher.getInstance(transformation);
+        }
         LOG.trace("getCipher({}) -> {}", transformation, safeClassname(result));
         return result;
     }
@@ -74,8 +96,26 @@ public class SecurityUtils {
         return result;
     }
 
+    /**
+     * Macs preferably come from a provider other than Bouncy Castle too, see
+     * {@link #getCipher(String)}, the platform providers being native code.
+     */
     public static synchronized Mac getMac(String algorithm) throws NoSuchAlgorithmException, NoSuchProviderException {
-        Mac result = Mac.getInstance(algorithm);
+        Mac result = null;
+        for (Provider provider : Security.getProviders()) {
+            if (BOUNCY_CASTLE.equals(provider.getName())) {
+                continue;
+            }
+            try {
+                result = Mac.getInstance(algorithm, provider);
+                break;
+            } catch (NoSuchAlgorithmException e) {
+                // try the next one
+            }
+        }
+        if (result == null) {
+            result = Mac.getInstance(algorithm);
+        }
         LOG.trace("getMac({}) -> {}", algorithm, safeClassname(result));
         return result;
     }
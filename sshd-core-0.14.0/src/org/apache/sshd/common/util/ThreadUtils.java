@@ -57,6 +57,20 @@ public class ThreadUtils {
                 new ThreadPoolExecutor.CallerRunsPolicy());
     }
 
+    /**
+     * A cached pool of at most the given number of threads, rejecting tasks
+     * while all of them are busy, for work the caller can do itself instead.
+     */
+    public static ExecutorService newBoundedCachedThreadPool(
+            String poolName,
+            int maxThreads
+    ) {
+        return new ThreadPoolExecutor(0, Math.max(1, maxThreads),
+                60L, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                new SshdThreadFactory(poolName));
+    }
+
     public static ScheduledExecutorService newSingleThreadScheduledExecutor(
             String poolName
     ) {
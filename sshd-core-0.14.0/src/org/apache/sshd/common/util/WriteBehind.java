@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Writes behind the writer, so that receiving the next data overlaps with
+ * writing the previous data to storage.
+ *
+ * Consecutive writes are collected into chunks which end at multiples of
+ * the chunk size, and a full chunk, or a write elsewhere, hands the chunk
+ * to a single task on the executor writing the chunks in order. Writes
+ * only wait when all chunks are waiting to be written, which bounds the
+ * memory used. A failed write is thrown by the next write, flush or close,
+ * and any data still waiting is dropped.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class WriteBehind implements Closeable {
+
+    /**
+     * Where the data goes to.
+     */
+    public interface Sink {
+        void write(byte[] data, int off, int len, long position) throws IOException;
+    }
+
+    private static class Chunk {
+        final byte[] data;
+        final long position;
+        final int capacity;
+        int length;
+
+        Chunk(byte[] data, long position, int capacity) {
+            this.data = data;
+            this.position = position;
+            this.capacity = capacity;
+        }
+    }
+
+    private final Sink sink;
+    private final Executor executor;
+    private final int chunkSize;
+    private final int maxChunks;
+
+    private final ArrayDeque<Chunk> queue = new ArrayDeque<Chunk>();
+    private final ArrayDeque<byte[]> free = new ArrayDeque<byte[]>();
+    private Chunk current;
+    private int allocated;
+    private boolean writing;
+    private boolean closed;
+    private IOException error;
+
+    private final Runnable writer = new Runnable() {
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * @param sink      the data to write behind
+     * @param executor  executes the writes
+     * @param chunkSize number of bytes written at once
+     * @param maxChunks maximum number of chunks held in memory
+     */
+    public WriteBehind(Sink sink, Executor executor, int chunkSize, int maxChunks) {
+        this.sink = sink;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.maxChunks = Math.max(1, maxChunks);
+    }
+
+    public void write(byte[] data, int off, int len, long position) throws IOException {
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Write behind closed");
+            }
+            while (len > 0) {
+                checkError();
+                if (current != null && position != current.position + current.length) {
+                    handOff();
+                }
+                if (current == null) {
+                    current = new Chunk(take(), position, chunkSize - (int) (position % chunkSize));
+                }
+                int n = Math.min(len, current.capacity - current.length);
+                System.arraycopy(data, off, current.data, current.length, n);
+                current.length += n;
+                if (current.length == current.capacity) {
+                    handOff();
+                }
+                off += n;
+                len -= n;
+                position += n;
+            }
+        }
+    }
+
+    /**
+     * Wait until all data written so far has been passed to the sink.
+     */
+    public synchronized void flush() throws IOException {
+        if (current != null) {
+            handOff();
+        }
+        while (writing) {
+            waitForWriter();
+        }
+        checkError();
+    }
+
+    /**
+     * Flush and release the buffers.
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            current = null;
+            queue.clear();
+            free.clear();
+        }
+    }
+
+    private void checkError() throws IOException {
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private byte[] take() throws IOException {
+        while (free.isEmpty() && allocated >= maxChunks) {
+            waitForWriter();
+            checkError();
+        }
+        byte[] data = free.poll();
+        if (data == null) {
+            data = new byte[chunkSize];
+            allocated++;
+        }
+        return data;
+    }
+
+    private void waitForWriter() throws IOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            throw (InterruptedIOException) new InterruptedIOException().initCause(e);
+        }
+    }
+
+    private void handOff() {
+        queue.addLast(current);
+        current = null;
+        if (!writing) {
+            writing = true;
+            try {
+                executor.execute(writer);
+            } catch (RejectedExecutionException e) {
+                // e.g. shut down, write in the caller
+                drain();
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                Chunk c;
+                synchronized (this) {
+                    c = queue.peekFirst();
+                    if (c == null || error != null) {
+                        return;
+                    }
+                }
+
+                IOException failure = null;
+                try {
+                    sink.write(c.data, 0, c.length, c.position);
+                } catch (IOException e) {
+                    failure = e;
+                } catch (Throwable t) {
+                    // e.g. a runtime exception of the file system, fail the writes waiting for it
+                    failure = new IOException(t);
+                }
+
+                synchronized (this) {
+                    queue.pollFirst();
+                    free.push(c.data);
+                    if (failure != null) {
+                        error = failure;
+                        for (Chunk dropped : queue) {
+                            free.push(dropped.data);
+                        }
+                        queue.clear();
+                    }
+                    notifyAll();
+                }
+            }
+        } finally {
+            synchronized (this) {
+                writing = false;
+                notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+
+/**
+ * An output stream writing behind its writer, see {@link WriteBehind}.
+ * {@link #flush()} waits for the data to be written, closing it flushes
+ * and closes the underlying stream.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class WriteBehindOutputStream extends FilterOutputStream {
+
+    private final WriteBehind writeBehind;
+    private long position;
+
+    public WriteBehindOutputStream(final OutputStream out, Executor executor, int chunkSize, int maxChunks) {
+        super(out);
+        // a stream is written sequentially, so the position is only for the write behind
+        this.writeBehind = new WriteBehind(new WriteBehind.Sink() {
+            public void write(byte[] data, int off, int len, long position) throws IOException {
+                out.write(data, off, len);
+            }
+        }, executor, chunkSize, maxChunks);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        writeBehind.write(b, off, len, position);
+        position += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeBehind.flush();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writeBehind.close();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -100,8 +100,8 @@ public abstract class AbstractDHGServer implements KeyExchange {
         buffer.putString(I_C);
         buffer.putString(I_S);
         buffer.putString(K_S);
-        buffer.putMPInt(e);
-        buffer.putMPInt(f);
+        dh.putE(buffer, e);
+        dh.putE(buffer, f);
         buffer.putMPInt(K);
         hash.update(buffer.array(), 0, buffer.available());
         H = hash.digest();
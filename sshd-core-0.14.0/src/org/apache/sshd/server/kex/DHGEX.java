@@ -20,11 +20,11 @@ package org.apache.sshd.server.kex;
 
 import java.io.IOException;
 import java.math.BigInteger;
-import java.net.URL;
 import java.security.KeyPair;
 import java.security.PublicKey;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 
 import org.apache.sshd.common.Digest;
 import org.apache.sshd.common.KeyExchange;
@@ -221,20 +221,17 @@ public class DHGEX implements KeyExchange {
     }
 
     private DH chooseDH(int min, int prf, int max) throws Exception {
-        List<Moduli.DhGroup> groups = null;
-        URL moduli;
+        NavigableMap<Integer, List<Moduli.DhGroup>> groups = null;
         String moduliStr = session.getFactoryManager().getProperties().get(ServerFactoryManager.MODULI_URL);
         if (moduliStr != null) {
             try {
-                moduli = new URL(moduliStr);
-                groups = Moduli.parseModuli(moduli);
+                groups = Moduli.getGroups(moduliStr);
             } catch (IOException e) {
                 log.warn("Error loading external moduli", e);
             }
         }
         if (groups == null) {
-            moduli = getClass().getResource("/org/apache/sshd/moduli");
-            groups = Moduli.parseModuli(moduli);
+            groups = Moduli.getGroups(null);
         }
 
         min = Math.max(min, 1024);
@@ -243,24 +240,20 @@ public class DHGEX implements KeyExchange {
         // those if BouncyCastle is registered
         prf = Math.min(prf, SecurityUtils.isBouncyCastleRegistered() ? 8192 : 1024);
         max = Math.min(max, 8192);
-        int bestSize = 0;
-        List<Moduli.DhGroup> selected = new ArrayList<Moduli.DhGroup>();
-        for (Moduli.DhGroup group : groups) {
-            if (group.size < min || group.size > max) {
-                continue;
-            }
-            if ((group.size > prf && group.size < bestSize) || (group.size > bestSize && bestSize < prf)) {
-                bestSize = group.size;
-                selected.clear();
-            }
-            if (group.size == bestSize) {
-                selected.add(group);
+        // the smallest size of at least the preferred one, or else the largest
+        Map.Entry<Integer, List<Moduli.DhGroup>> best = null;
+        if (min <= max) {
+            NavigableMap<Integer, List<Moduli.DhGroup>> sizes = groups.subMap(min, true, max, true);
+            best = sizes.ceilingEntry(prf);
+            if (best == null) {
+                best = sizes.lastEntry();
             }
         }
-        if (selected.isEmpty()) {
+        if (best == null) {
             log.warn("No suitable primes found, defaulting to DHG1");
             return getDH(new BigInteger(DHGroupData.getP1()), new BigInteger(DHGroupData.getG()));
         }
+        List<Moduli.DhGroup> selected = best.getValue();
         Random random = session.getFactoryManager().getRandomFactory().create();
         int which = random.random(selected.size());
         Moduli.DhGroup group = selected.get(which);
@@ -24,11 +24,19 @@ import java.io.InputStreamReader;
 import java.math.BigInteger;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
 /**
  * Helper class to load DH group primes from a file.
  *
+ * The groups are parsed once and kept indexed by size, see
+ * {@link #getGroups(String)}, as parsing the hundreds of KB of primes
+ * for each group exchange costs more than the exchange itself.
+ *
  * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
  */
 public class Moduli {
@@ -36,6 +44,13 @@ public class Moduli {
     public static final int MODULI_TYPE_SAFE = 2;
     public static final int MODULI_TESTS_COMPOSITE = 0x01;
 
+    private static final String DEFAULT_MODULI = "/org/apache/sshd/moduli";
+
+    private static final Object LOCK = new Object();
+    private static NavigableMap<Integer, List<DhGroup>> defaultGroups;
+    private static String externalUrl;
+    private static NavigableMap<Integer, List<DhGroup>> externalGroups;
+
     public static class DhGroup {
         int size;
         BigInteger g;
@@ -84,6 +99,46 @@ public class Moduli {
         }
     }
 
+    /**
+     * Get the groups of a moduli file by size. The file is parsed on first use
+     * and again only when a different url is given.
+     *
+     * @param url the url of the moduli file, or null for the built-in one
+     * @return the groups, indexed by size
+     * @throws IOException if the file can not be read
+     */
+    public static NavigableMap<Integer, List<DhGroup>> getGroups(String url) throws IOException {
+        synchronized (LOCK) {
+            if (url == null) {
+                if (defaultGroups == null) {
+                    defaultGroups = index(parseModuli(Moduli.class.getResource(DEFAULT_MODULI)));
+                }
+                return defaultGroups;
+            }
+            if (!url.equals(externalUrl)) {
+                externalGroups = index(parseModuli(new URL(url)));
+                externalUrl = url;
+            }
+            return externalGroups;
+        }
+    }
+
+    private static NavigableMap<Integer, List<DhGroup>> index(List<DhGroup> groups) {
+        TreeMap<Integer, List<DhGroup>> bySize = new TreeMap<Integer, List<DhGroup>>();
+        for (DhGroup group : groups) {
+            List<DhGroup> list = bySize.get(group.size);
+            if (list == null) {
+                list = new ArrayList<DhGroup>();
+                bySize.put(group.size, list);
+            }
+            list.add(group);
+        }
+        for (Map.Entry<Integer, List<DhGroup>> e : bySize.entrySet()) {
+            e.setValue(Collections.unmodifiableList(e.getValue()));
+        }
+        return Collections.unmodifiableNavigableMap(bySize);
+    }
+
     // Private constructor
     private Moduli() {
     }
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.server.sftp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Table of open SFTP handles. A handle is the index of its slot combined
+ * with a generation counter of the slot, so that lookups are array accesses
+ * and a closed handle is not mistaken for the next one reusing its slot.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+class HandleTable<T> {
+
+    private static final int INITIAL_SIZE = 16;
+
+    private Object[] slots = new Object[INITIAL_SIZE];
+    private int[] generations = new int[INITIAL_SIZE];
+    private int[] free = new int[INITIAL_SIZE];
+    private int freeCount;
+    private int used;
+    private int size;
+
+    /**
+     * @return the handle of the added value
+     */
+    public synchronized long add(T value) {
+        int index;
+        if (freeCount > 0) {
+            index = free[--freeCount];
+        } else {
+            if (used == slots.length) {
+                int n = slots.length * 2;
+                slots = Arrays.copyOf(slots, n);
+                generations = Arrays.copyOf(generations, n);
+                free = Arrays.copyOf(free, n);
+            }
+            index = used++;
+        }
+        slots[index] = value;
+        size++;
+        return ((long) generations[index] << 32) | index;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized T get(long handle) {
+        int index = (int) handle;
+        if (index < 0 || index >= used || generations[index] != (int) (handle >>> 32)) {
+            return null;
+        }
+        return (T) slots[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized T remove(long handle) {
+        T value = get(handle);
+        if (value != null) {
+            int index = (int) handle;
+            slots[index] = null;
+            generations[index]++;
+            free[freeCount++] = index;
+            size--;
+        }
+        return value;
+    }
+
+    /**
+     * Remove all values.
+     * @return the removed values
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<T> removeAll() {
+        List<T> values = new ArrayList<T>(size);
+        for (int i = 0; i < used; i++) {
+            if (slots[i] != null) {
+                values.add((T) slots[i]);
+                slots[i] = null;
+                generations[i]++;
+            }
+        }
+        used = 0;
+        freeCount = 0;
+        size = 0;
+        return values;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.server.sftp;
+
+import java.util.TimeZone;
+
+import org.apache.sshd.common.util.Buffer;
+
+import static org.apache.sshd.server.sftp.SftpSubsystem.*;
+
+/**
+ * Writes the <code>ls -l</code> style long name of an SSH_FXP_NAME entry
+ * as a length prefixed UTF-8 string straight into a {@link Buffer},
+ * without building intermediate strings.
+ *
+ * The output matches what the subsystem produced before, e.g.
+ * <pre>
+ * -rw-r--r--  1 owner    group        1234 Mar  4 12:05 name
+ * </pre>
+ * An instance can be shared between threads.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class LongNameEncoder {
+
+    private static final byte[][] MONTHS = {
+            { 'J', 'a', 'n' }, { 'F', 'e', 'b' }, { 'M', 'a', 'r' }, { 'A', 'p', 'r' },
+            { 'M', 'a', 'y' }, { 'J', 'u', 'n' }, { 'J', 'u', 'l' }, { 'A', 'u', 'g' },
+            { 'S', 'e', 'p' }, { 'O', 'c', 't' }, { 'N', 'o', 'v' }, { 'D', 'e', 'c' } };
+
+    private static final int[] PERMISSION_BITS = {
+            S_IRUSR, S_IWUSR, S_IXUSR, S_IRGRP, S_IWGRP, S_IXGRP, S_IROTH, S_IWOTH, S_IXOTH };
+
+    private static final byte[] PERMISSION_CHARS = { 'r', 'w', 'x', 'r', 'w', 'x', 'r', 'w', 'x' };
+
+    private static final long SIX_MONTHS = 15811200000L; // 183L * 24L * 60L * 60L * 1000L;
+    private static final long MILLIS_PER_DAY = 24L * 60L * 60L * 1000L;
+
+    private static final int NAME_COLUMN = 8;
+    private static final int SIZE_COLUMN = 8;
+    private static final int DATE_LENGTH = 12;
+
+    // type, permissions, links, owner, group, size, date and the separators,
+    // with room for 20 digit numbers
+    private static final int FIXED_LENGTH = 1 + 9 + 2 + 20 + 1 + 3 * NAME_COLUMN
+            + 1 + 3 * NAME_COLUMN + 1 + 20 + 1 + DATE_LENGTH + 1;
+
+    private final TimeZone timeZone;
+
+    public LongNameEncoder() {
+        this(TimeZone.getDefault());
+    }
+
+    public LongNameEncoder(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    /**
+     * Put the long name of an entry into the buffer, prefixed with its length
+     * as {@link Buffer#putString(String)} does.
+     *
+     * @param perms the permission bits as returned by {@link SftpSubsystem#getPermissions(java.util.Map)}
+     * @param lastModified modification time in milliseconds, negative if unknown
+     */
+    public void encode(Buffer buffer, String name, boolean isDirectory, boolean isLink, int perms,
+                       long nlink, String owner, String group, long size, long lastModified) {
+        int start = buffer.wpos();
+        // make sure everything fits so that we can write to the array directly
+        buffer.wpos(start + 4 + FIXED_LENGTH + 3 * name.length());
+        byte[] data = buffer.array();
+        int pos = start + 4;
+
+        data[pos++] = (byte) (isDirectory ? 'd' : isLink ? 'l' : '-');
+        for (int i = 0; i < PERMISSION_BITS.length; i++) {
+            data[pos++] = (perms & PERMISSION_BITS[i]) != 0 ? PERMISSION_CHARS[i] : (byte) '-';
+        }
+        data[pos++] = ' ';
+        data[pos++] = ' ';
+        pos = putNumber(data, pos, nlink, 0);
+        data[pos++] = ' ';
+        pos = putColumn(data, pos, owner);
+        data[pos++] = ' ';
+        pos = putColumn(data, pos, group);
+        data[pos++] = ' ';
+        pos = putNumber(data, pos, size, SIZE_COLUMN);
+        data[pos++] = ' ';
+        pos = putDate(data, pos, lastModified);
+        data[pos++] = ' ';
+        pos = putUtf8(data, pos, name, 0, name.length());
+
+        int len = pos - start - 4;
+        data[start] = (byte) (len >> 24);
+        data[start + 1] = (byte) (len >> 16);
+        data[start + 2] = (byte) (len >> 8);
+        data[start + 3] = (byte) len;
+        buffer.wpos(pos);
+    }
+
+    /**
+     * Exactly {@link #NAME_COLUMN} characters, cut or padded with spaces.
+     */
+    private static int putColumn(byte[] data, int pos, String s) {
+        int n = Math.min(s.length(), NAME_COLUMN);
+        pos = putUtf8(data, pos, s, 0, n);
+        for (int i = n; i < NAME_COLUMN; i++) {
+            data[pos++] = ' ';
+        }
+        return pos;
+    }
+
+    /**
+     * Decimal number, right aligned in a column of the given width.
+     */
+    private static int putNumber(byte[] data, int pos, long value, int width) {
+        if (value < 0) {
+            // never happens for sizes and link counts, keep it simple
+            value = 0;
+        }
+        int digits = 1;
+        for (long v = value / 10; v != 0; v /= 10) {
+            digits++;
+        }
+        for (int i = digits; i < width; i++) {
+            data[pos++] = ' ';
+        }
+        int end = pos + digits;
+        for (int i = end - 1; i >= pos; i--) {
+            data[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        return end;
+    }
+
+    /**
+     * Twelve characters, <code>Mmm dd hh:mm</code> for recent dates and
+     * <code>Mmm dd  yyyy</code> otherwise.
+     */
+    private int putDate(byte[] data, int pos, long millis) {
+        if (millis < 0) {
+            for (int i = 0; i < DATE_LENGTH; i++) {
+                data[pos++] = '-';
+            }
+            return pos;
+        }
+
+        long local = millis + timeZone.getOffset(millis);
+        long days = Math.floorDiv(local, MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(local, MILLIS_PER_DAY);
+
+        // civil date from days since the epoch, see
+        // http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        byte[] name = MONTHS[month - 1];
+        data[pos++] = name[0];
+        data[pos++] = name[1];
+        data[pos++] = name[2];
+        data[pos++] = ' ';
+        pos = putNumber(data, pos, day, 2);
+        data[pos++] = ' ';
+
+        if (Math.abs(System.currentTimeMillis() - millis) > SIX_MONTHS) {
+            data[pos++] = ' ';
+            pos = putNumber(data, pos, year, 4);
+        } else {
+            int minutes = millisOfDay / 60000;
+            int hh = minutes / 60;
+            int mm = minutes % 60;
+            data[pos++] = (byte) ('0' + hh / 10);
+            data[pos++] = (byte) ('0' + hh % 10);
+            data[pos++] = ':';
+            data[pos++] = (byte) ('0' + mm / 10);
+            data[pos++] = (byte) ('0' + mm % 10);
+        }
+        return pos;
+    }
+
+    /**
+     * UTF-8 encode the given chars, at most three bytes per char.
+     * Unpaired surrogates become '?' as in {@link String#getBytes()}.
+     */
+    private static int putUtf8(byte[] data, int pos, String s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                data[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                data[pos++] = (byte) (0xc0 | (c >> 6));
+                data[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < to
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                data[pos++] = (byte) (0xf0 | (cp >> 18));
+                data[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                data[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                data[pos++] = (byte) (0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                data[pos++] = '?';
+            } else {
+                data[pos++] = (byte) (0xe0 | (c >> 12));
+                data[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                data[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return pos;
+    }
+}
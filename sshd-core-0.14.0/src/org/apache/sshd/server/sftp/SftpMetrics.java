@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.server.sftp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latencies of SFTP requests, per kind of request.
+ *
+ * The time of a request is split into the time it was queued after it
+ * was received, the time spent sending the reply, which waits for the
+ * channel window when the network is slow, and the remaining time
+ * executing it, which is mostly the time of the file system.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class SftpMetrics {
+
+    public enum Operation {
+        OPEN, CLOSE, READ, WRITE, OPENDIR, READDIR, STAT, SETSTAT, CHECK_FILE, COPY, OTHER
+    }
+
+    /**
+     * Histogram of durations with buckets of powers of two microseconds.
+     */
+    public static class Histogram {
+        private static final int BUCKETS = 32;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 1);
+            int bucket = Math.min(63 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        public long getMeanMicros() {
+            long n = count.get();
+            return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos.get() / n);
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the upper bound of the bucket holding the percentile, in microseconds
+         */
+        public long getPercentileMicros(double percentile) {
+            long n = count.get();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(n * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return 2L << i;
+                }
+            }
+            return 2L << (BUCKETS - 1);
+        }
+
+        /**
+         * @return the number of durations in each bucket, bucket {@code i}
+         *         holding those from 2^i to 2^(i+1) microseconds
+         */
+        public long[] getBuckets() {
+            long[] values = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                values[i] = buckets.get(i);
+            }
+            return values;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            totalNanos.set(0);
+            maxNanos.set(0);
+        }
+
+        @Override
+        public String toString() {
+            return "mean=" + getMeanMicros()
+                    + "us p50=" + getPercentileMicros(50)
+                    + "us p99=" + getPercentileMicros(99)
+                    + "us max=" + TimeUnit.NANOSECONDS.toMicros(getMaxNanos()) + "us";
+        }
+    }
+
+    public static class OperationStats {
+        private final Operation operation;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final Histogram queueTime = new Histogram();
+        private final Histogram executionTime = new Histogram();
+        private final Histogram sendTime = new Histogram();
+
+        OperationStats(Operation operation) {
+            this.operation = operation;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * @return number of requests answered with a status other than OK or EOF
+         */
+        public long getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * @return number of bytes of file data read, written or copied
+         */
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        /**
+         * @return time from receiving the request to executing it
+         */
+        public Histogram getQueueTime() {
+            return queueTime;
+        }
+
+        /**
+         * @return time executing the request, without sending the reply
+         */
+        public Histogram getExecutionTime() {
+            return executionTime;
+        }
+
+        /**
+         * @return time sending the reply
+         */
+        public Histogram getSendTime() {
+            return sendTime;
+        }
+
+        void reset() {
+            count.set(0);
+            failures.set(0);
+            bytes.set(0);
+            queueTime.reset();
+            executionTime.reset();
+            sendTime.reset();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(operation).append(": count=").append(getCount());
+            if (getFailures() > 0) {
+                sb.append(", failures=").append(getFailures());
+            }
+            if (getBytes() > 0) {
+                sb.append(", bytes=").append(getBytes());
+                long nanos = executionTime.getTotalNanos() + sendTime.getTotalNanos();
+                if (nanos > 0) {
+                    sb.append(", ").append(getBytes() * 1000 / nanos).append(" MB/s");
+                }
+            }
+            sb.append(", queue[").append(queueTime)
+                    .append("], exec[").append(executionTime)
+                    .append("], send[").append(sendTime).append("]");
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Collects the measurements of the request being executed by a thread.
+     */
+    static class Request {
+        long sendNanos;
+        long bytes;
+        boolean failed;
+    }
+
+    private final OperationStats[] stats;
+
+    public SftpMetrics() {
+        Operation[] operations = Operation.values();
+        stats = new OperationStats[operations.length];
+        for (Operation operation : operations) {
+            stats[operation.ordinal()] = new OperationStats(operation);
+        }
+    }
+
+    public OperationStats get(Operation operation) {
+        return stats[operation.ordinal()];
+    }
+
+    void record(Operation operation, long queueNanos, long totalNanos, Request request) {
+        OperationStats s = stats[operation.ordinal()];
+        s.count.incrementAndGet();
+        if (request.failed) {
+            s.failures.incrementAndGet();
+        }
+        if (request.bytes > 0) {
+            s.bytes.addAndGet(request.bytes);
+        }
+        s.queueTime.record(queueNanos);
+        s.executionTime.record(Math.max(totalNanos - request.sendNanos, 0));
+        s.sendTime.record(request.sendNanos);
+    }
+
+    public void reset() {
+        for (OperationStats s : stats) {
+            s.reset();
+        }
+    }
+
+    /**
+     * @return one line per kind of request received so far
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(getClass().getSimpleName());
+        for (OperationStats s : stats) {
+            if (s.getCount() > 0) {
+                sb.append("\n  ").append(s);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -25,30 +25,54 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.util.Calendar;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.EnumSet;
-import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.channel.ChannelOutputStream;
+import org.apache.sshd.common.file.CopyableSshFile;
+import org.apache.sshd.common.file.DirectoryStreamSshFile;
 import org.apache.sshd.common.file.FileSystemAware;
 import org.apache.sshd.common.file.FileSystemView;
+import org.apache.sshd.common.file.HashCachingSshFile;
+import org.apache.sshd.common.file.HighLatencySshFile;
+import org.apache.sshd.common.file.RandomAccessSshFile;
 import org.apache.sshd.common.file.SshFile;
 import org.apache.sshd.common.util.Buffer;
+import org.apache.sshd.common.util.BufferPool;
 import org.apache.sshd.common.util.IoUtils;
+import org.apache.sshd.common.util.ReadAhead;
 import org.apache.sshd.common.util.SelectorUtils;
 import org.apache.sshd.common.util.ThreadUtils;
+import org.apache.sshd.common.util.WriteBehind;
 import org.apache.sshd.server.Command;
 import org.apache.sshd.server.Environment;
 import org.apache.sshd.server.ExitCallback;
@@ -72,9 +96,13 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
 
     	private final ExecutorService	executors;
     	private final boolean shutdownExecutor;
+    	private final int requestThreads;
+    	private final SftpThreadPool threadPool;
+    	private final AtomicInteger inFlightRequests = new AtomicInteger();
+    	private final SftpMetrics metrics = new SftpMetrics();
 
     	public Factory() {
-    		this(null);
+    		this((ExecutorService) null);
     	}
 
         /**
@@ -99,8 +127,36 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
          *                        service, which will be shutdown regardless
          */
         public Factory(ExecutorService executorService, boolean shutdownOnExit) {
+        	this(executorService, shutdownOnExit, 0);
+        }
+
+        /**
+         * @param executorService The {@link ExecutorService} to be used by
+         *                        the {@link SftpSubsystem} command when starting execution. If
+         *                        {@code null} then a single-threaded ad-hoc service is used.
+         * @param shutdownOnExit  If {@code true} the {@link ExecutorService#shutdownNow()}
+         *                        will be called when subsystem terminates - unless it is the ad-hoc
+         *                        service, which will be shutdown regardless
+         * @param requestThreads  If greater than {@code 0} each subsystem executes file
+         *                        handle and stat requests on a pool of this many threads,
+         *                        see {@link SftpSubsystem#SftpSubsystem(ExecutorService, boolean, int)}
+         */
+        public Factory(ExecutorService executorService, boolean shutdownOnExit, int requestThreads) {
         	executors = executorService;
         	shutdownExecutor = shutdownOnExit;
+        	this.requestThreads = requestThreads;
+        	this.threadPool = null;
+        }
+
+        /**
+         * @param threadPool The {@link SftpThreadPool} running all subsystems created
+         *                   by this factory, see {@link SftpSubsystem#SftpSubsystem(SftpThreadPool)}
+         */
+        public Factory(SftpThreadPool threadPool) {
+        	executors = threadPool.getReaderExecutor();
+        	shutdownExecutor = false;
+        	requestThreads = 0;
+        	this.threadPool = threadPool;
         }
 
         public ExecutorService getExecutorService() {
@@ -111,8 +167,37 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
         	return shutdownExecutor;
         }
 
+        public int getRequestThreads() {
+        	return requestThreads;
+        }
+
+        public SftpThreadPool getThreadPool() {
+        	return threadPool;
+        }
+
+        /**
+         * @return number of requests currently queued or executing in all
+         *         pipelined subsystems created by this factory
+         */
+        public int getInFlightRequests() {
+        	return inFlightRequests.get();
+        }
+
+        /**
+         * @return the counters and latencies of the requests of all subsystems
+         *         created by this factory
+         */
+        public SftpMetrics getMetrics() {
+        	return metrics;
+        }
+
         public Command create() {
-            return new SftpSubsystem(getExecutorService(), isShutdownOnExit());
+            SftpSubsystem subsystem = threadPool != null
+                    ? new SftpSubsystem(threadPool)
+                    : new SftpSubsystem(getExecutorService(), isShutdownOnExit(), getRequestThreads());
+            subsystem.inFlightTotal = inFlightRequests;
+            subsystem.metrics = metrics;
+            return subsystem;
         }
 
         public String getName() {
@@ -125,10 +210,83 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
      */
     public static final String MAX_OPEN_HANDLES_PER_SESSION = "max-open-handles-per-session";
 
+    /**
+     * Properties key for the largest SFTP packet accepted from the client,
+     * advertised through the limits@openssh.com extension.
+     */
+    public static final String MAX_PACKET_LENGTH_PROPERTY = "sftp-max-packet-length";
+
+    /**
+     * Properties key for the largest amount of data returned by one SSH_FXP_READ.
+     */
+    public static final String MAX_READ_LENGTH = "sftp-max-read-length";
+
+    /**
+     * Properties key for the largest amount of data accepted in one SSH_FXP_WRITE.
+     */
+    public static final String MAX_WRITE_LENGTH = "sftp-max-write-length";
+
+    public static final int DEFAULT_MAX_PACKET_LENGTH = 256 * 1024;
+    // leave room for the request header, as OpenSSH does
+    public static final int DEFAULT_MAX_READ_LENGTH = DEFAULT_MAX_PACKET_LENGTH - 1024;
+    public static final int DEFAULT_MAX_WRITE_LENGTH = DEFAULT_MAX_PACKET_LENGTH - 1024;
+
+    public static final String EXT_LIMITS = "limits@openssh.com";
+    public static final String EXT_COPY_DATA = "copy-data";
+    public static final String EXT_COPY_FILE = "copy-file";
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Properties key for the number of chunks read ahead of sequential reads
+     * of a file, 0 to disable read ahead. Reading ahead needs the executor of a
+     * {@link SftpThreadPool}.
+     */
+    public static final String READ_AHEAD_CHUNKS = "sftp-read-ahead-chunks";
+
+    public static final int DEFAULT_READ_AHEAD_CHUNKS = 4;
+    public static final int READ_AHEAD_CHUNK_SIZE = 128 * 1024;
+
+    /**
+     * Properties key for the number of chunks of data written behind the
+     * SSH_FXP_WRITE requests of a file, 0 to write before replying. Writing
+     * behind needs the executor of a {@link SftpThreadPool}.
+     */
+    public static final String WRITE_BEHIND_CHUNKS = "sftp-write-behind-chunks";
+
+    public static final int DEFAULT_WRITE_BEHIND_CHUNKS = 4;
+    public static final int WRITE_BEHIND_CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * Properties key for the largest number of entries in one SSH_FXP_NAME
+     * reply to SSH_FXP_READDIR.
+     */
+    public static final String READDIR_MAX_ENTRIES = "sftp-readdir-max-entries";
+
+    public static final int DEFAULT_READDIR_MAX_ENTRIES = 4096;
+    // a READDIR reply fills this many channel packets, as far as the read length allows
+    private static final int READDIR_PACKETS = 8;
+    // the packet length all clients accept, see draft-ietf-secsh-filexfer-02 section 3
+    private static final int MIN_CLIENT_PACKET_LENGTH = 34000;
+    // directory entries whose attributes are fetched ahead of the reply
+    private static final int ATTRIBUTE_PREFETCH = 256;
+
+    public static final String EXT_CHECK_FILE = "check-file";
+    public static final String EXT_CHECK_FILE_HANDLE = "check-file-handle";
+    public static final String EXT_CHECK_FILE_NAME = "check-file-name";
+
+    private static final int MIN_CHECK_FILE_BLOCK_SIZE = 256;
+    private static final int CHECK_FILE_BUFFER_SIZE = 1024 * 1024;
+    // hash the blocks of files at least this large in parallel
+    private static final long PARALLEL_CHECK_FILE_SIZE = 16 * 1024 * 1024;
+
     public static final int LOWER_SFTP_IMPL = 3; // Working implementation from v3
     public static final int HIGHER_SFTP_IMPL = 3; //  .. up to
     public static final String ALL_SFTP_IMPL = "3";
     public static final int  MAX_PACKET_LENGTH = 1024 * 16;
+    public static final int  MAX_PENDING_REQUESTS = 64;
+
+    private static final String INVALID_HANDLE = "Invalid handle";
 
     public static final int SSH_FXP_INIT =             1;
     public static final int SSH_FXP_VERSION =          2;
@@ -215,7 +373,26 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
 	private Future<?> pendingFuture;
     private FileSystemView root;
     private int version;
-    private Map<String, Handle> handles = new HashMap<String, Handle>();
+    private final HandleTable<Handle> handles = new HandleTable<Handle>();
+    private Executor requestExecutor;
+    private SftpThreadPool threadPool;
+    private final Semaphore pendingRequests = new Semaphore(MAX_PENDING_REQUESTS);
+    private final Map<Long, RequestLane> lanes = new HashMap<Long, RequestLane>();
+    private AtomicInteger inFlightTotal;
+    private SftpMetrics metrics;
+    // the measurements of the request executed by the current thread
+    private static final ThreadLocal<SftpMetrics.Request> CURRENT_REQUEST = new ThreadLocal<SftpMetrics.Request>();
+    private BufferPool bufferPool = new BufferPool();
+    private final LongNameEncoder longNameEncoder = new LongNameEncoder();
+    private int maxPacketLength = DEFAULT_MAX_PACKET_LENGTH;
+    private int maxReadLength = DEFAULT_MAX_READ_LENGTH;
+    private int maxWriteLength = DEFAULT_MAX_WRITE_LENGTH;
+    private int maxOpenHandles;
+    private int readAheadChunks;
+    private int writeBehindChunks;
+    private int readdirMaxEntries;
+    // whether the client has been told the limits, and so accepts replies as long as reads
+    private volatile boolean limitsSent;
 
     protected static abstract class Handle {
         SshFile file;
@@ -238,10 +415,32 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
         // the directory should be read once at "open directory"
         List<SshFile> fileList = null;
         int fileIndex;
+        // or, if supported, streamed while the client reads it
+        DirectoryStream<SshFile> fileStream;
+        Iterator<SshFile> fileIterator;
+        // entries read ahead, with the attributes of slow files being fetched
+        ExecutorService attributeExecutor;
+        final ArrayDeque<Entry> prefetched = new ArrayDeque<Entry>();
+        Entry current;
+
+        private static class Entry {
+            final SshFile file;
+            final Future<Map<SshFile.Attribute, Object>> attributes;
+
+            Entry(SshFile file, Future<Map<SshFile.Attribute, Object>> attributes) {
+                this.file = file;
+                this.attributes = attributes;
+            }
+        }
 
-        public DirectoryHandle(SshFile file) {
+        public DirectoryHandle(SshFile file) throws IOException {
             super(file);
-            fileList = file.listSshFiles();
+            if (file instanceof DirectoryStreamSshFile) {
+                fileStream = ((DirectoryStreamSshFile) file).openDirectoryStream();
+                fileIterator = fileStream.iterator();
+            } else {
+                fileList = file.listSshFiles();
+            }
             fileIndex = 0;
         }
 
@@ -253,11 +452,98 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
             this.done = done;
         }
 
+        /**
+         * Fetch the attributes of the next {@link HighLatencySshFile} entries
+         * on the given executor, a bounded number of entries ahead of the
+         * reply being sent. The entries keep their order.
+         */
+        public void setAttributeExecutor(ExecutorService executor) {
+            this.attributeExecutor = executor;
+        }
+
         public boolean hasNext() {
-            return fileIndex < fileList.size();
+            return !prefetched.isEmpty() || hasNextFile();
         }
 
         public SshFile next() {
+            if (attributeExecutor == null) {
+                return nextFile();
+            }
+            prefetch();
+            current = prefetched.poll();
+            if (current == null) {
+                throw new NoSuchElementException();
+            }
+            prefetch();
+            return current.file;
+        }
+
+        /**
+         * @return the attributes of the entry just returned by {@link #next()}
+         */
+        public Map<SshFile.Attribute, Object> getEntryAttributes(SshFile f) throws IOException {
+            Future<Map<SshFile.Attribute, Object>> attributes = current != null && current.file == f
+                    ? current.attributes : null;
+            current = null;
+            if (attributes == null) {
+                return readEntryAttributes(f);
+            }
+            try {
+                return attributes.get();
+            } catch (InterruptedException e) {
+                throw (InterruptedIOException) new InterruptedIOException().initCause(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+
+        private void prefetch() {
+            while (prefetched.size() < ATTRIBUTE_PREFETCH && hasNextFile()) {
+                final SshFile f = nextFile();
+                Future<Map<SshFile.Attribute, Object>> attributes = null;
+                if (f instanceof HighLatencySshFile) {
+                    try {
+                        attributes = attributeExecutor.submit(new Callable<Map<SshFile.Attribute, Object>>() {
+                            public Map<SshFile.Attribute, Object> call() throws IOException {
+                                return readEntryAttributes(f);
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        // read when the entry is sent
+                    }
+                }
+                prefetched.add(new Entry(f, attributes));
+            }
+        }
+
+        private void cancelPrefetch() {
+            for (Entry e : prefetched) {
+                if (e.attributes != null) {
+                    e.attributes.cancel(false);
+                }
+            }
+            prefetched.clear();
+            current = null;
+        }
+
+        private boolean hasNextFile() {
+            if (fileIterator != null) {
+                return fileIterator.hasNext();
+            }
+            return fileList != null && fileIndex < fileList.size();
+        }
+
+        private SshFile nextFile() {
+            if (fileIterator != null) {
+                return fileIterator.next();
+            }
             SshFile f = fileList.get(fileIndex);
             fileIndex++;
             return f;
@@ -269,7 +555,18 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
 
         public void clearFileList() {
             // allow the garbage collector to do the job
+            cancelPrefetch();
             fileList = null;
+            IoUtils.closeQuietly(fileStream);
+            fileStream = null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            cancelPrefetch();
+            IoUtils.closeQuietly(fileStream);
+            fileStream = null;
+            super.close();
         }
     }
 
@@ -280,16 +577,86 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
         InputStream input;
         long inputPos;
         long length;
+        FileChannel readChannel;
+        FileChannel writeChannel;
+        Executor readAheadExecutor;
+        int readAheadChunks;
+        ReadAhead readAhead;
+        Executor writeBehindExecutor;
+        int writeBehindChunks;
+        WriteBehind writeBehind;
 
         public FileHandle(SshFile sshFile, int flags) {
             super(sshFile);
             this.flags = flags;
         }
 
+        /**
+         * Read ahead of sequential reads, see {@link ReadAhead}.
+         * The read ahead starts with the second read continuing the first.
+         *
+         * @param executor  executes the read ahead
+         * @param maxChunks maximum number of chunks of {@link #READ_AHEAD_CHUNK_SIZE} bytes read ahead
+         */
+        public void setReadAhead(Executor executor, int maxChunks) {
+            this.readAheadExecutor = executor;
+            this.readAheadChunks = maxChunks;
+        }
+
+        /**
+         * Write behind the writes, see {@link WriteBehind}. Reads, copies and
+         * attribute requests on this handle wait for the pending writes.
+         *
+         * @param executor  executes the writes
+         * @param maxChunks maximum number of chunks of {@link #WRITE_BEHIND_CHUNK_SIZE} bytes held
+         */
+        public void setWriteBehind(Executor executor, int maxChunks) {
+            this.writeBehindExecutor = executor;
+            this.writeBehindChunks = maxChunks;
+        }
+
+        /**
+         * Wait until all data written through this handle is in the file.
+         */
+        public void flush() throws IOException {
+            if (writeBehind != null) {
+                writeBehind.flush();
+            }
+        }
+
         public int read(byte[] data, long offset) throws IOException {
+            return read(data, 0, data.length, offset);
+        }
+
+        public int read(byte[] data, int off, int len, long offset) throws IOException {
             if ((flags & SSH_FXF_READ) == 0) {
                 throw new IOException("File has not been opened for reading");
             }
+            flush();
+            if (readAheadExecutor != null && readAheadChunks > 0) {
+                if (readAhead == null) {
+                    readAhead = new ReadAhead(new ReadAhead.Source() {
+                        public int read(byte[] data, int off, int len, long position) throws IOException {
+                            return readDirect(data, off, len, position);
+                        }
+                    }, readAheadExecutor, READ_AHEAD_CHUNK_SIZE, readAheadChunks);
+                }
+                return readAhead.read(data, off, len, offset);
+            }
+            return readDirect(data, off, len, offset);
+        }
+
+        protected int readDirect(byte[] data, int off, int len, long offset) throws IOException {
+            if (file instanceof RandomAccessSshFile) {
+                return readPositional(data, off, len, offset);
+            }
+            // the read ahead and the request may both get here
+            synchronized (this) {
+                return readStream(data, off, len, offset);
+            }
+        }
+
+        private int readStream(byte[] data, int off, int len, long offset) throws IOException {
             if (input != null && offset >= length) {
                 return -1;
             }
@@ -305,15 +672,71 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
             if (offset >= length) {
                 return -1;
             }
-            int read = input.read(data);
+            int read = input.read(data, off, len);
             inputPos += read;
             return read;
         }
 
+        /**
+         * Reads at the given offset without moving any stream position, so that
+         * out-of-order requests do not cause the file to be reopened.
+         * Fills the whole range unless the end of the file is reached.
+         */
+        protected int readPositional(byte[] data, int off, int len, long offset) throws IOException {
+            FileChannel readChannel = getReadChannel();
+            ByteBuffer bb = ByteBuffer.wrap(data, off, len);
+            long pos = offset;
+            while (bb.hasRemaining()) {
+                int l = readChannel.read(bb, pos);
+                if (l < 0) {
+                    break;
+                }
+                pos += l;
+            }
+            int read = bb.position() - off;
+            if (read == 0 && len > 0) {
+                return -1;
+            }
+            return read;
+        }
+
+        protected synchronized FileChannel getReadChannel() throws IOException {
+            if (readChannel == null) {
+                readChannel = ((RandomAccessSshFile) file).createReadChannel();
+            }
+            return readChannel;
+        }
+
         public void write(byte[] data, long offset) throws IOException {
+            write(data, 0, data.length, offset);
+        }
+
+        public void write(byte[] data, int off, int len, long offset) throws IOException {
             if ((flags & SSH_FXF_WRITE) == 0) {
                 throw new IOException("File has not been opened for writing");
             }
+            if (readAhead != null) {
+                readAhead.invalidate();
+            }
+            if (writeBehindExecutor != null && writeBehindChunks > 0) {
+                if (writeBehind == null) {
+                    writeBehind = new WriteBehind(new WriteBehind.Sink() {
+                        public void write(byte[] data, int off, int len, long position) throws IOException {
+                            writeDirect(data, off, len, position);
+                        }
+                    }, writeBehindExecutor, WRITE_BEHIND_CHUNK_SIZE, writeBehindChunks);
+                }
+                writeBehind.write(data, off, len, offset);
+                return;
+            }
+            writeDirect(data, off, len, offset);
+        }
+
+        protected void writeDirect(byte[] data, int off, int len, long offset) throws IOException {
+            if (file instanceof RandomAccessSshFile) {
+                writePositional(data, off, len, offset);
+                return;
+            }
             if ((flags & SSH_FXF_APPEND) != 0) {
                 offset = (output != null) ? outputPos : file.getSize();
             }
@@ -325,21 +748,114 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                 outputPos = offset;
                 output = file.createOutputStream(offset);
             }
-            output.write(data);
-            outputPos += data.length;
+            output.write(data, off, len);
+            outputPos += len;
+        }
+
+        /**
+         * Writes at the given offset, so that pipelined and out-of-order
+         * requests do not cause the file to be reopened.
+         */
+        protected void writePositional(byte[] data, int off, int len, long offset) throws IOException {
+            if (writeChannel == null) {
+                writeChannel = ((RandomAccessSshFile) file).createWriteChannel();
+            }
+            if ((flags & SSH_FXF_APPEND) != 0) {
+                offset = writeChannel.size();
+            }
+            ByteBuffer bb = ByteBuffer.wrap(data, off, len);
+            long pos = offset;
+            while (bb.hasRemaining()) {
+                pos += writeChannel.write(bb, pos);
+            }
+        }
+
+        /**
+         * Copies data from this handle to the target handle within the server.
+         * Uses {@link FileChannel#transferTo} if both files support positional
+         * access, and reads and writes through the handles otherwise.
+         *
+         * @param length number of bytes to copy, 0 to copy up to the end of the file
+         * @return the number of bytes copied
+         */
+        public long copyTo(long offset, long length, FileHandle target, long targetOffset) throws IOException {
+            if ((flags & SSH_FXF_READ) == 0) {
+                throw new IOException("File has not been opened for reading");
+            }
+            if ((target.flags & SSH_FXF_WRITE) == 0) {
+                throw new IOException("File has not been opened for writing");
+            }
+            flush();
+            target.flush();
+            if (target == this || target.file.getAbsolutePath().equals(file.getAbsolutePath())) {
+                long end = length > 0 ? offset + length : Math.max(file.getSize(), offset);
+                if (offset < targetOffset + (end - offset) && targetOffset < end) {
+                    throw new IOException("Source and destination ranges overlap");
+                }
+            }
+            long copied = 0;
+            if (file instanceof RandomAccessSshFile && target.file instanceof RandomAccessSshFile) {
+                FileChannel readChannel = getReadChannel();
+                if (target.writeChannel == null) {
+                    target.writeChannel = ((RandomAccessSshFile) target.file).createWriteChannel();
+                }
+                long end = readChannel.size();
+                if (length > 0) {
+                    end = Math.min(end, offset + length);
+                }
+                // positional writes do not use the channel position, so it is free to use here
+                target.writeChannel.position(targetOffset);
+                while (offset + copied < end) {
+                    long l = readChannel.transferTo(offset + copied, end - offset - copied, target.writeChannel);
+                    if (l <= 0) {
+                        break;
+                    }
+                    copied += l;
+                }
+            } else {
+                byte[] data = new byte[COPY_BUFFER_SIZE];
+                while (length == 0 || copied < length) {
+                    int len = length == 0 ? data.length : (int) Math.min(data.length, length - copied);
+                    int l = read(data, 0, len, offset + copied);
+                    if (l < 0) {
+                        break;
+                    }
+                    target.write(data, 0, l, targetOffset + copied);
+                    copied += l;
+                }
+            }
+            if (target.readAhead != null) {
+                // data read ahead before the copy is stale
+                target.readAhead.invalidate();
+            }
+            return copied;
         }
 
         @Override
         public void close() throws IOException {
-            IoUtils.closeQuietly(output, input);
-            output = null;
-            input = null;
-            super.close();
+            if (readAhead != null) {
+                readAhead.close();
+                readAhead = null;
+            }
+            try {
+                // a failed write behind fails the close
+                if (writeBehind != null) {
+                    writeBehind.close();
+                }
+            } finally {
+                writeBehind = null;
+                IoUtils.closeQuietly(output, input, readChannel, writeChannel);
+                output = null;
+                input = null;
+                readChannel = null;
+                writeChannel = null;
+                super.close();
+            }
         }
     }
 
     public SftpSubsystem() {
-        this(null);
+        this((ExecutorService) null);
     }
 
     /**
@@ -364,16 +880,84 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
      * @see ThreadUtils#newSingleThreadExecutor(String)
      */
     public SftpSubsystem(ExecutorService executorService, boolean shutdownOnExit) {
+        this(executorService, shutdownOnExit, 0);
+    }
+
+    /**
+     * @param executorService The {@link ExecutorService} to be used by
+     *                        the {@link SftpSubsystem} command when starting execution. If
+     *                        {@code null} then a single-threaded ad-hoc service is used.
+     * @param shutdownOnExit  If {@code true} the {@link ExecutorService#shutdownNow()}
+     *                        will be called when subsystem terminates - unless it is the ad-hoc
+     *                        service, which will be shutdown regardless
+     * @param requestThreads  If greater than {@code 0} READ, WRITE, STAT and the other
+     *                        handle based requests are executed on a pool of this many
+     *                        threads while the next packets are read. Requests on the same
+     *                        handle keep their order, replies may complete out of order.
+     *                        Any other request waits for all pending ones. If {@code 0}
+     *                        all requests are processed one after the other.
+     * @see ThreadUtils#newFixedThreadPool(String, int)
+     */
+    public SftpSubsystem(ExecutorService executorService, boolean shutdownOnExit, int requestThreads) {
         if ((executors = executorService) == null) {
             executors = ThreadUtils.newSingleThreadExecutor(getClass().getSimpleName());
             shutdownExecutor = true;    // we always close the ad-hoc executor service
         } else {
             shutdownExecutor = shutdownOnExit;
         }
+        if (requestThreads > 0) {
+            requestExecutor = ThreadUtils.newFixedThreadPool(getClass().getSimpleName() + "-requests", requestThreads);
+        }
+    }
+
+    /**
+     * Read the channel on a thread of the given pool and pipeline the
+     * requests on its workers, with the same ordering guarantees as
+     * {@link #SftpSubsystem(ExecutorService, boolean, int)}.
+     *
+     * @param threadPool The {@link SftpThreadPool} shared by the subsystems, it
+     *                   is <U>not</U> shut down when the subsystem is closed
+     */
+    public SftpSubsystem(SftpThreadPool threadPool) {
+        this(threadPool.getReaderExecutor(), false, 0);
+        this.threadPool = threadPool;
+    }
+
+    /**
+     * @return number of requests currently queued or executing, always
+     *         {@code 0} unless requests are pipelined
+     */
+    public int getInFlightRequests() {
+        return MAX_PENDING_REQUESTS - pendingRequests.availablePermits();
     }
 
     public void setSession(ServerSession session) {
         this.session = session;
+        this.bufferPool = BufferPool.getPool(session);
+        if (threadPool != null) {
+            this.requestExecutor = threadPool.getSessionExecutor(session);
+        }
+        this.maxPacketLength = getIntProperty(MAX_PACKET_LENGTH_PROPERTY, DEFAULT_MAX_PACKET_LENGTH);
+        this.maxReadLength = Math.min(getIntProperty(MAX_READ_LENGTH, DEFAULT_MAX_READ_LENGTH), maxPacketLength);
+        this.maxWriteLength = Math.min(getIntProperty(MAX_WRITE_LENGTH, DEFAULT_MAX_WRITE_LENGTH), maxPacketLength);
+        this.maxOpenHandles = getIntProperty(MAX_OPEN_HANDLES_PER_SESSION, 0);
+        this.readAheadChunks = getIntProperty(READ_AHEAD_CHUNKS, DEFAULT_READ_AHEAD_CHUNKS);
+        this.writeBehindChunks = getIntProperty(WRITE_BEHIND_CHUNKS, DEFAULT_WRITE_BEHIND_CHUNKS);
+        this.readdirMaxEntries = Math.max(1, getIntProperty(READDIR_MAX_ENTRIES, DEFAULT_READDIR_MAX_ENTRIES));
+    }
+
+    private int getIntProperty(String name, int defaultValue) {
+        Map<String, String> properties = session.getFactoryManager().getProperties();
+        String value = properties != null ? properties.get(name) : null;
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    /**
+     * @return the pool of packet buffers, shared with the other
+     *         channels of the session
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
     }
 
     public void setFileSystemView(FileSystemView view) {
@@ -412,10 +996,10 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
             dis = new DataInputStream(in);
             while (true) {
                 int length = dis.readInt();
-                if (length < 5) {
-                    throw new IllegalArgumentException();
+                if (length < 5 || length > maxPacketLength) {
+                    throw new IllegalArgumentException("Bad SFTP packet length: " + length);
                 }
-                Buffer buffer = new Buffer(length + 4);
+                Buffer buffer = bufferPool.acquire(length + 4);
                 buffer.putInt(length);
                 int nb = length;
                 while (nb > 0) {
@@ -426,13 +1010,27 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                     buffer.wpos(buffer.wpos() + l);
                     nb -= l;
                 }
-                process(buffer);
+                dispatch(buffer);
             }
         } catch (Throwable t) {
             if (!closed && !(t instanceof EOFException)) { // Ignore
                 log.error("Exception caught in SFTP subsystem", t);
             }
         } finally {
+            if (requestExecutor != null) {
+                // wait for this subsystem's requests only, the executor may be shared
+                try {
+                    // let pending requests finish before their handles are closed
+                    if (!pendingRequests.tryAcquire(MAX_PENDING_REQUESTS, 10, TimeUnit.SECONDS)) {
+                        log.warn("Pending SFTP requests did not complete: " + getInFlightRequests());
+                    }
+                } catch (InterruptedException e) {
+                    log.debug("Interrupted while waiting for pending SFTP requests");
+                }
+                if (threadPool == null) {
+                    ((ExecutorService) requestExecutor).shutdownNow();
+                }
+            }
             if (dis != null) {
                 try {
                     dis.close();
@@ -441,14 +1039,11 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                 }
             }
 
-            if (handles != null) {
-                for (Map.Entry<String, Handle> entry : handles.entrySet()) {
-                    Handle handle = entry.getValue();
-                    try {
-                        handle.close();
-                    } catch (IOException ioe) {
-                        log.error("Could not close open handle: " + entry.getKey(), ioe);
-                    }
+            for (Handle handle : handles.removeAll()) {
+                try {
+                    handle.close();
+                } catch (IOException ioe) {
+                    log.error("Could not close open handle: " + handle.getFile().getAbsolutePath(), ioe);
                 }
             }
             dis = null;
@@ -457,6 +1052,273 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
         }
     }
 
+    /**
+     * Process the request or, if requests are pipelined, hand it over to the
+     * request executor. Requests on a handle are queued on a lane for that
+     * handle, stat requests are executed unordered. All other requests may
+     * change the file system or the handles and wait for the pending ones.
+     */
+    protected void dispatch(Buffer buffer) throws IOException, InterruptedException {
+        long received = System.nanoTime();
+        if (requestExecutor == null) {
+            try {
+                process(buffer, received);
+            } finally {
+                bufferPool.release(buffer);
+            }
+            return;
+        }
+        int rpos = buffer.rpos();
+        buffer.getInt();
+        int type = ((int) buffer.getByte()) & 0xFF;
+        int id = buffer.getInt();
+        Long lane;
+        switch (type) {
+            case SSH_FXP_CLOSE:
+            case SSH_FXP_READ:
+            case SSH_FXP_WRITE:
+            case SSH_FXP_FSTAT:
+            case SSH_FXP_FSETSTAT:
+            case SSH_FXP_READDIR:
+                lane = readHandle(buffer);
+                break;
+            case SSH_FXP_LSTAT:
+            case SSH_FXP_STAT:
+                lane = null;
+                break;
+            default:
+                buffer.rpos(rpos);
+                pendingRequests.acquire(MAX_PENDING_REQUESTS);
+                try {
+                    process(buffer, received);
+                } finally {
+                    pendingRequests.release(MAX_PENDING_REQUESTS);
+                    bufferPool.release(buffer);
+                }
+                return;
+        }
+        buffer.rpos(rpos);
+        // blocks reading further packets while too many requests are pending
+        pendingRequests.acquire();
+        if (inFlightTotal != null) {
+            inFlightTotal.incrementAndGet();
+        }
+        final PendingRequest request = new PendingRequest(buffer, id, received);
+        if (lane == null) {
+            try {
+                requestExecutor.execute(new SftpThreadPool.RejectableTask() {
+                    public void run() {
+                        execute(request);
+                    }
+
+                    public void rejected(RejectedExecutionException e) {
+                        fail(request, e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                fail(request, e);
+            }
+        } else {
+            RequestLane l;
+            boolean start;
+            synchronized (lanes) {
+                l = lanes.get(lane);
+                if (l == null) {
+                    l = new RequestLane(lane);
+                    lanes.put(lane, l);
+                }
+                l.queue.add(request);
+                start = !l.running;
+                l.running = true;
+            }
+            if (start) {
+                try {
+                    requestExecutor.execute(l);
+                } catch (RejectedExecutionException e) {
+                    l.rejected(e);
+                }
+            }
+        }
+    }
+
+    private void execute(PendingRequest request) {
+        try {
+            process(request.buffer, request.received);
+        } catch (Throwable t) {
+            if (!closed) {
+                log.error("Exception caught in SFTP subsystem", t);
+            }
+            // unlike a sequential request, the failure does not end the subsystem
+            sendFailure(request, t);
+        } finally {
+            complete(request);
+        }
+    }
+
+    /**
+     * Answer a request which will not be executed, e.g. because the thread
+     * pool has been shut down, so that the client does not wait for it.
+     */
+    private void fail(PendingRequest request, Throwable t) {
+        try {
+            sendFailure(request, t);
+        } finally {
+            complete(request);
+        }
+    }
+
+    private void sendFailure(PendingRequest request, Throwable t) {
+        try {
+            sendStatus(request.id, SSH_FX_FAILURE, t.getMessage() != null ? t.getMessage() : t.toString());
+        } catch (Throwable e) {
+            log.debug("Could not fail SFTP request " + request.id, e);
+        }
+    }
+
+    private void complete(PendingRequest request) {
+        bufferPool.release(request.buffer);
+        if (inFlightTotal != null) {
+            inFlightTotal.decrementAndGet();
+        }
+        pendingRequests.release();
+    }
+
+    /**
+     * Executes the requests of one handle in the order they were received.
+     */
+    private class RequestLane implements SftpThreadPool.RejectableTask {
+        final Long handle;
+        final Queue<PendingRequest> queue = new ArrayDeque<PendingRequest>();
+        boolean running;
+
+        RequestLane(Long handle) {
+            this.handle = handle;
+        }
+
+        public void run() {
+            while (true) {
+                PendingRequest request;
+                synchronized (lanes) {
+                    request = queue.poll();
+                    if (request == null) {
+                        running = false;
+                        lanes.remove(handle);
+                        return;
+                    }
+                }
+                execute(request);
+            }
+        }
+
+        public void rejected(RejectedExecutionException e) {
+            while (true) {
+                PendingRequest request;
+                synchronized (lanes) {
+                    request = queue.poll();
+                    if (request == null) {
+                        running = false;
+                        lanes.remove(handle);
+                        return;
+                    }
+                }
+                fail(request, e);
+            }
+        }
+    }
+
+    private static class PendingRequest {
+        final Buffer buffer;
+        final int id;
+        final long received;
+
+        PendingRequest(Buffer buffer, int id, long received) {
+            this.buffer = buffer;
+            this.id = id;
+            this.received = received;
+        }
+    }
+
+    /**
+     * Process the request, recording it in the metrics if there are any.
+     *
+     * @param received {@link System#nanoTime()} when the request was received
+     */
+    private void process(Buffer buffer, long received) throws IOException {
+        if (metrics == null) {
+            process(buffer);
+            return;
+        }
+        long start = System.nanoTime();
+        SftpMetrics.Operation operation = getOperation(buffer);
+        SftpMetrics.Request request = new SftpMetrics.Request();
+        CURRENT_REQUEST.set(request);
+        try {
+            process(buffer);
+        } finally {
+            CURRENT_REQUEST.remove();
+            metrics.record(operation, start - received, System.nanoTime() - start, request);
+        }
+    }
+
+    private static SftpMetrics.Operation getOperation(Buffer buffer) {
+        int rpos = buffer.rpos();
+        try {
+            buffer.getInt();
+            int type = ((int) buffer.getByte()) & 0xFF;
+            buffer.getInt();
+            switch (type) {
+                case SSH_FXP_OPEN:
+                    return SftpMetrics.Operation.OPEN;
+                case SSH_FXP_CLOSE:
+                    return SftpMetrics.Operation.CLOSE;
+                case SSH_FXP_READ:
+                    return SftpMetrics.Operation.READ;
+                case SSH_FXP_WRITE:
+                    return SftpMetrics.Operation.WRITE;
+                case SSH_FXP_OPENDIR:
+                    return SftpMetrics.Operation.OPENDIR;
+                case SSH_FXP_READDIR:
+                    return SftpMetrics.Operation.READDIR;
+                case SSH_FXP_STAT:
+                case SSH_FXP_LSTAT:
+                case SSH_FXP_FSTAT:
+                    return SftpMetrics.Operation.STAT;
+                case SSH_FXP_SETSTAT:
+                case SSH_FXP_FSETSTAT:
+                    return SftpMetrics.Operation.SETSTAT;
+                case SSH_FXP_EXTENDED:
+                    String extension = buffer.getString();
+                    if (extension.equals(EXT_CHECK_FILE)
+                            || extension.equals(EXT_CHECK_FILE_HANDLE)
+                            || extension.equals(EXT_CHECK_FILE_NAME)) {
+                        return SftpMetrics.Operation.CHECK_FILE;
+                    }
+                    if (extension.equals(EXT_COPY_DATA) || extension.equals(EXT_COPY_FILE)) {
+                        return SftpMetrics.Operation.COPY;
+                    }
+                    return SftpMetrics.Operation.OTHER;
+                default:
+                    return SftpMetrics.Operation.OTHER;
+            }
+        } finally {
+            buffer.rpos(rpos);
+        }
+    }
+
+    private static void addSendTime(long nanos) {
+        SftpMetrics.Request request = CURRENT_REQUEST.get();
+        if (request != null) {
+            request.sendNanos += nanos;
+        }
+    }
+
+    private static void addBytes(long bytes) {
+        SftpMetrics.Request request = CURRENT_REQUEST.get();
+        if (request != null) {
+            request.bytes += bytes;
+        }
+    }
+
     protected void process(Buffer buffer) throws IOException {
         int length = buffer.getInt();
         // XXX has been changed to support hashing as extended command, see below (check-file)
@@ -475,6 +1337,12 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                     buffer.clear();
                     buffer.putByte((byte) SSH_FXP_VERSION);
                     buffer.putInt(version);
+                    buffer.putString(EXT_LIMITS);
+                    buffer.putString("1");
+                    buffer.putString(EXT_COPY_DATA);
+                    buffer.putString("1");
+                    buffer.putString(EXT_COPY_FILE);
+                    buffer.putString("1");
                     send(buffer);
                 } else {
                     // We only support version 3 (Version 1 and 2 are not common)
@@ -484,15 +1352,9 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                 break;
             }
             case SSH_FXP_OPEN: {
-                if (session.getFactoryManager().getProperties() != null) {
-                    String maxHandlesString = session.getFactoryManager().getProperties().get(MAX_OPEN_HANDLES_PER_SESSION);
-                    if (maxHandlesString != null) {
-                        int maxHandleCount = Integer.parseInt(maxHandlesString);
-                        if (handles.size() > maxHandleCount) {
-                            sendStatus(id, SSH_FX_FAILURE, "Too many open handles");
-                            break;
-                        }
-                    }
+                if (maxOpenHandles > 0 && handles.size() > maxOpenHandles) {
+                    sendStatus(id, SSH_FX_FAILURE, "Too many open handles");
+                    break;
                 }
 
                 String path = buffer.getString();
@@ -539,23 +1401,27 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                     if ((pflags & SSH_FXF_CREAT) != 0) {
                         file.setAttributes(attrs);
                     }
-                    String handle = UUID.randomUUID().toString();
-                    handles.put(handle, new FileHandle(file, pflags));
-                    sendHandle(id, handle);
+                    FileHandle fh = new FileHandle(file, pflags);
+                    if (threadPool != null && (pflags & SSH_FXF_READ) != 0) {
+                        fh.setReadAhead(threadPool.getReadAheadExecutor(), readAheadChunks);
+                    }
+                    if (threadPool != null && (pflags & SSH_FXF_WRITE) != 0) {
+                        fh.setWriteBehind(threadPool.getWriteBehindExecutor(), writeBehindChunks);
+                    }
+                    sendHandle(id, handles.add(fh));
                 } catch (IOException e) {
                     sendStatus(id, SSH_FX_FAILURE, e.getMessage() == null ? "" : e.getMessage());
                 }
                 break;
             }
             case SSH_FXP_CLOSE: {
-                String handle = buffer.getString();
+                long handle = readHandle(buffer);
                 log.debug("Received SSH_FXP_CLOSE (handle={})", handle);
                 try {
-                    Handle h = handles.get(handle);
+                    Handle h = handles.remove(handle);
                     if (h == null) {
-                        sendStatus(id, SSH_FX_FAILURE, handle, "");
+                        sendStatus(id, SSH_FX_FAILURE, INVALID_HANDLE);
                     } else {
-                        handles.remove(handle);
                         h.close();
                         sendStatus(id, SSH_FX_OK, "", "");
                     }
@@ -565,19 +1431,26 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                 break;
             }
             case SSH_FXP_READ: {
-                String handle = buffer.getString();
+                long handle = readHandle(buffer);
                 long offset = buffer.getLong();
-                int len = buffer.getInt();
-                log.debug("Received SSH_FXP_READ (handle={}, offset={}, length={})", new Object[] { handle, offset, len });
+                long requested = buffer.getUInt();
+                log.debug("Received SSH_FXP_READ (handle={}, offset={}, length={})", new Object[] { handle, offset, requested });
                 try {
                     Handle p = handles.get(handle);
                     if (!(p instanceof FileHandle)) {
-                        sendStatus(id, SSH_FX_FAILURE, handle);
+                        sendStatus(id, SSH_FX_FAILURE, INVALID_HANDLE);
                     } else {
                         FileHandle fh = (FileHandle) p;
-                        byte[] b = new byte[Math.min(len, Buffer.MAX_LEN)];
+                        // an uint32, as much as we send at once when beyond that
+                        int len = (int) Math.min(requested, maxReadLength);
+                        if (out instanceof ChannelOutputStream) {
+                            sendData(id, fh, offset, len);
+                            break;
+                        }
+                        byte[] b = new byte[len];
                         len = fh.read(b, offset);
                         if (len >= 0) {
+                            addBytes(len);
                             Buffer buf = new Buffer(len + 5);
                             buf.putByte((byte) SSH_FXP_DATA);
                             buf.putInt(id);
@@ -593,17 +1466,19 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                 break;
             }
             case SSH_FXP_WRITE: {
-                String handle = buffer.getString();
+                long handle = readHandle(buffer);
                 long offset = buffer.getLong();
-                byte[] data = buffer.getBytes();
-                log.debug("Received SSH_FXP_WRITE (handle={}, offset={}, data=byte[{}])", new Object[] { handle, offset, data.length });
+                // the data is not copied out of the packet
+                Buffer data = buffer.getBytesSlice();
+                log.debug("Received SSH_FXP_WRITE (handle={}, offset={}, data=byte[{}])", new Object[] { handle, offset, data.available() });
                 try {
                     Handle p = handles.get(handle);
                     if (!(p instanceof FileHandle)) {
-                        sendStatus(id, SSH_FX_FAILURE, handle);
+                        sendStatus(id, SSH_FX_FAILURE, INVALID_HANDLE);
                     } else {
                         FileHandle fh = (FileHandle) p;
-                        fh.write(data, offset);
+                        addBytes(data.available());
+                        fh.write(data.array(), data.rpos(), data.available(), offset);
                         sendStatus(id, SSH_FX_OK, "");
                     }
                 } catch (IOException e) {
@@ -625,13 +1500,16 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                 break;
             }
             case SSH_FXP_FSTAT: {
-                String handle = buffer.getString();
+                long handle = readHandle(buffer);
                 log.debug("Received SSH_FXP_FSTAT (handle={})", handle);
                 try {
                     Handle p = handles.get(handle);
                     if (p == null) {
-                        sendStatus(id, SSH_FX_FAILURE, handle);
+                        sendStatus(id, SSH_FX_FAILURE, INVALID_HANDLE);
                     } else {
+                        if (p instanceof FileHandle) {
+                            ((FileHandle) p).flush();
+                        }
                         sendAttrs(id, p.getFile(), true);
                     }
                 } catch (FileNotFoundException e) {
@@ -659,14 +1537,17 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                 break;
             }
             case SSH_FXP_FSETSTAT: {
-                String handle = buffer.getString();
+                long handle = readHandle(buffer);
                 Map<SshFile.Attribute, Object> attrs = readAttrs(buffer);
                 log.debug("Received SSH_FXP_FSETSTAT (handle={}, attrs={})", handle, attrs);
                 try {
                     Handle p = handles.get(handle);
                     if (p == null) {
-                        sendStatus(id, SSH_FX_FAILURE, handle);
+                        sendStatus(id, SSH_FX_FAILURE, INVALID_HANDLE);
                     } else {
+                        if (p instanceof FileHandle) {
+                            ((FileHandle) p).flush();
+                        }
                         p.getFile().setAttributes(attrs);
                         sendStatus(id, SSH_FX_OK, "");
                     }
@@ -691,9 +1572,11 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                     } else if (!p.isReadable()) {
                         sendStatus(id, SSH_FX_PERMISSION_DENIED, path);
                     } else {
-                        String handle = UUID.randomUUID().toString();
-                        handles.put(handle, new DirectoryHandle(p));
-                        sendHandle(id, handle);
+                        DirectoryHandle dh = new DirectoryHandle(p);
+                        if (threadPool != null) {
+                            dh.setAttributeExecutor(threadPool.getAttributeExecutor());
+                        }
+                        sendHandle(id, handles.add(dh));
                     }
                 } catch (IOException e) {
                     sendStatus(id, SSH_FX_FAILURE, e.getMessage());
@@ -701,12 +1584,12 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                 break;
             }
             case SSH_FXP_READDIR: {
-                String handle = buffer.getString();
+                long handle = readHandle(buffer);
                 log.debug("Received SSH_FXP_READDIR (handle={})", handle);
                 try {
                     Handle p = handles.get(handle);
                     if (!(p instanceof DirectoryHandle)) {
-                        sendStatus(id, SSH_FX_FAILURE, handle);
+                        sendStatus(id, SSH_FX_FAILURE, INVALID_HANDLE);
                     } else if (((DirectoryHandle) p).isDone()) {
                         sendStatus(id, SSH_FX_EOF, "", "");
                     } else if (!p.getFile().doesExist()) {
@@ -734,6 +1617,8 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                             sendStatus(id, SSH_FX_EOF, "", "");
                         }
                     }
+                } catch (DirectoryIteratorException e) {
+                    sendStatus(id, SSH_FX_FAILURE, e.getCause().getMessage());
                 } catch (IOException e) {
                     sendStatus(id, SSH_FX_FAILURE, e.getMessage());
                 }
@@ -902,36 +1787,143 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                 // remote_file.check('sha256', 0, 0, 0)
                 String extension = buffer.getString();
                 switch (extension) {
-                    case "check-file": {
-                        String handle = buffer.getString();
+                    case EXT_LIMITS: {
+                        log.debug("Received SSH_FXP_EXTENDED({})", extension);
+                        Buffer buf = bufferPool.acquire(BufferPool.SMALL_SIZE);
+                        try {
+                            buf.putByte((byte) SSH_FXP_EXTENDED_REPLY);
+                            buf.putInt(id);
+                            buf.putLong(maxPacketLength);
+                            buf.putLong(maxReadLength);
+                            buf.putLong(maxWriteLength);
+                            buf.putLong(maxOpenHandles); // 0 means no limit
+                            send(buf);
+                            limitsSent = true;
+                        } finally {
+                            bufferPool.release(buf);
+                        }
+                        break;
+                    }
+                    case EXT_COPY_DATA: {
+                        long readHandle = readHandle(buffer);
+                        long readOffset = buffer.getLong();
+                        long readLength = buffer.getLong();
+                        long writeHandle = readHandle(buffer);
+                        long writeOffset = buffer.getLong();
+                        log.debug("Received SSH_FXP_EXTENDED({}(read-handle={}, read-offset={}, read-length={}, write-handle={}, write-offset={}))",
+                                extension, readHandle, readOffset, readLength, writeHandle, writeOffset);
+                        try {
+                            Handle r = handles.get(readHandle);
+                            Handle w = handles.get(writeHandle);
+                            if (!(r instanceof FileHandle)) {
+                                sendStatus(id, SSH_FX_FAILURE, INVALID_HANDLE);
+                            } else if (!(w instanceof FileHandle)) {
+                                sendStatus(id, SSH_FX_FAILURE, INVALID_HANDLE);
+                            } else {
+                                long copied = ((FileHandle) r).copyTo(readOffset, readLength, (FileHandle) w, writeOffset);
+                                log.debug("Copied {} bytes from handle {} to handle {}", copied, readHandle, writeHandle);
+                                addBytes(copied);
+                                sendStatus(id, SSH_FX_OK, "");
+                            }
+                        } catch (IOException e) {
+                            sendStatus(id, SSH_FX_FAILURE, e.getMessage());
+                        }
+                        break;
+                    }
+                    case EXT_COPY_FILE: {
+                        String source = buffer.getString();
+                        String destination = buffer.getString();
+                        boolean overwrite = buffer.getBoolean();
+                        log.debug("Received SSH_FXP_EXTENDED({}(source={}, destination={}, overwrite={}))",
+                                extension, source, destination, overwrite);
+                        try {
+                            SshFile src = resolveFile(source);
+                            SshFile dst = resolveFile(destination);
+                            if (!src.doesExist()) {
+                                sendStatus(id, SSH_FX_NO_SUCH_FILE, src.getAbsolutePath());
+                            } else if (!src.isFile()) {
+                                sendStatus(id, SSH_FX_FAILURE, "Not a regular file " + source);
+                            } else if (dst.doesExist() && !overwrite) {
+                                sendStatus(id, SSH_FX_FAILURE, dst.getAbsolutePath());
+                            } else if (!src.isReadable()) {
+                                sendStatus(id, SSH_FX_PERMISSION_DENIED, "Can not read " + source);
+                            } else if (!dst.isWritable()) {
+                                sendStatus(id, SSH_FX_PERMISSION_DENIED, "Can not write " + destination);
+                            } else {
+                                copyFile(src, dst);
+                                sendStatus(id, SSH_FX_OK, "");
+                            }
+                        } catch (IOException e) {
+                            sendStatus(id, SSH_FX_FAILURE, e.getMessage());
+                        }
+                        break;
+                    }
+                    case EXT_CHECK_FILE:
+                    case EXT_CHECK_FILE_HANDLE:
+                    case EXT_CHECK_FILE_NAME: {
+                        boolean byName = EXT_CHECK_FILE_NAME.equals(extension);
+                        String target = null;
+                        long handle = -1;
+                        if (byName) {
+                            target = buffer.getString();
+                        } else {
+                            handle = readHandle(buffer);
+                        }
                         String hashalgorithms = buffer.getString();
                         long hashoffset = buffer.getLong();
                         long hashlength = buffer.getLong();
-                        int blocksize = buffer.getInt();
-                        log.debug("Received SSH_FXP_EXTENDED({}(handle={}, hashalgorithms={}, offset={}, length={}, blocksize={}))",
-                                extension, handle, hashalgorithms, hashoffset, hashlength, blocksize);
+                        // an uint32, a single block when beyond what an int holds
+                        int blocksize = (int) Math.min(buffer.getUInt(), Integer.MAX_VALUE);
+                        log.debug("Received SSH_FXP_EXTENDED({}(target={}, hashalgorithms={}, offset={}, length={}, blocksize={}))",
+                                extension, byName ? target : handle, hashalgorithms, hashoffset, hashlength, blocksize);
                         try {
-                            Handle p = handles.get(handle);
-                            if (!(p instanceof FileHandle)) {
-                                sendStatus(id, SSH_FX_FAILURE, handle);
+                            FileHandle fh;
+                            if (!byName) {
+                                Handle p = handles.get(handle);
+                                if (!(p instanceof FileHandle)) {
+                                    sendStatus(id, SSH_FX_FAILURE, INVALID_HANDLE);
+                                    break;
+                                }
+                                fh = (FileHandle) p;
                             } else {
-                                FileHandle fh = (FileHandle) p;
-                                Object[] filehash = checkFileHash(fh, hashalgorithms, hashoffset, hashlength, blocksize);
-                                String hashalgorithm = (String)filehash[0];
-                                byte[] hash = (byte[])filehash[1];
-                                Buffer buf = new Buffer(extension.length() + hashalgorithm.length() + hash.length + 2*4 + 5);
-                                buf.putByte((byte) SSH_FXP_EXTENDED_REPLY);
-                                buf.putInt(id);
-                                buf.putString(extension);
-                                buf.putString(hashalgorithm);
-                                buf.putRawBytes(hash);
-                                send(buf);
+                                SshFile file = resolveFile(target);
+                                if (!file.doesExist()) {
+                                    sendStatus(id, SSH_FX_NO_SUCH_FILE, file.getAbsolutePath());
+                                    break;
+                                }
+                                if (!file.isFile()) {
+                                    sendStatus(id, SSH_FX_FAILURE, "Not a regular file " + target);
+                                    break;
+                                }
+                                if (!file.isReadable()) {
+                                    sendStatus(id, SSH_FX_PERMISSION_DENIED, "Can not read " + target);
+                                    break;
+                                }
+                                fh = new FileHandle(file, SSH_FXF_READ);
+                            }
+                            Object[] filehash;
+                            try {
+                                filehash = checkFileHash(fh, hashalgorithms, hashoffset, hashlength, blocksize);
+                            } finally {
+                                if (byName) {
+                                    fh.close();
+                                }
                             }
+                            String hashalgorithm = (String)filehash[0];
+                            byte[] hash = (byte[])filehash[1];
+                            Buffer buf = new Buffer(EXT_CHECK_FILE.length() + hashalgorithm.length() + hash.length + 2*4 + 5);
+                            buf.putByte((byte) SSH_FXP_EXTENDED_REPLY);
+                            buf.putInt(id);
+                            buf.putString(EXT_CHECK_FILE);
+                            buf.putString(hashalgorithm);
+                            buf.putRawBytes(hash);
+                            send(buf);
                         } catch (NoSuchAlgorithmException | UnsupportedOperationException e) {
                             sendStatus(id, SSH_FX_OP_UNSUPPORTED, e.getMessage());
                         } catch (IOException e) {
                             sendStatus(id, SSH_FX_FAILURE, e.getMessage());
                         }
+                        break;
                     }
                     default: {
                         log.info("Received unsupported SSH_FXP_EXTENDED({})", extension);
@@ -948,20 +1940,76 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
         }
     }
 
-    protected void sendHandle(int id, String handle) throws IOException {
-        Buffer buffer = new Buffer();
-        buffer.putByte((byte) SSH_FXP_HANDLE);
+    protected void sendHandle(int id, long handle) throws IOException {
+        Buffer buffer = bufferPool.acquire(BufferPool.SMALL_SIZE);
+        try {
+            buffer.putByte((byte) SSH_FXP_HANDLE);
+            buffer.putInt(id);
+            // an opaque string of 8 bytes, see readHandle()
+            buffer.putInt(8);
+            buffer.putLong(handle);
+            send(buffer);
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Read a handle sent by the client.
+     * @return the handle, or -1 if it is not one of ours
+     */
+    protected long readHandle(Buffer buffer) {
+        int len = buffer.getInt();
+        if (len < 0 || len > buffer.available()) {
+            throw new IllegalStateException("Bad item length: " + len);
+        }
+        if (len != 8) {
+            buffer.rpos(buffer.rpos() + len);
+            return -1;
+        }
+        return buffer.getLong();
+    }
+
+    /**
+     * Reads the file data straight into the outgoing channel packet, so the
+     * only copy left is the encryption of the packet.
+     */
+    protected void sendData(int id, FileHandle fh, long offset, int len) throws IOException {
+        ChannelOutputStream cos = (ChannelOutputStream) out;
+        Buffer buffer = cos.createPacketBuffer(len + 13);
+        int pos = buffer.wpos();
+        buffer.putInt(0);
+        buffer.putByte((byte) SSH_FXP_DATA);
         buffer.putInt(id);
-        buffer.putString(handle);
-        send(buffer);
+        buffer.putInt(0);
+        int dataPos = buffer.wpos();
+        buffer.wpos(dataPos + len);
+        int read = fh.read(buffer.array(), dataPos, len, offset);
+        if (read < 0) {
+            sendStatus(id, SSH_FX_EOF, "");
+            return;
+        }
+        buffer.wpos(pos);
+        buffer.putInt(dataPos + read - pos - 4);
+        buffer.wpos(dataPos - 4);
+        buffer.putInt(read);
+        buffer.wpos(dataPos + read);
+        addBytes(read);
+        long start = System.nanoTime();
+        cos.writePacketBuffer(buffer);
+        addSendTime(System.nanoTime() - start);
     }
 
     protected void sendAttrs(int id, SshFile file, boolean followLinks) throws IOException {
-        Buffer buffer = new Buffer();
-        buffer.putByte((byte) SSH_FXP_ATTRS);
-        buffer.putInt(id);
-        writeAttrs(buffer, file, followLinks);
-        send(buffer);
+        Buffer buffer = bufferPool.acquire(BufferPool.SMALL_SIZE);
+        try {
+            buffer.putByte((byte) SSH_FXP_ATTRS);
+            buffer.putInt(id);
+            writeAttrs(buffer, file, followLinks);
+            send(buffer);
+        } finally {
+            bufferPool.release(buffer);
+        }
     }
 
     protected void sendPath(int id, SshFile f) throws IOException {
@@ -987,7 +2035,7 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
         if (f.getName().length() == 0) {
             f = resolveFile(".");
         }
-        buffer.putString(getLongName(f, sendAttrs)); // Format specified in the specs
+        putLongName(buffer, f, sendAttrs); // Format specified in the specs
         buffer.putInt(0);
         send(buffer);
     }
@@ -1005,95 +2053,85 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
     }
 
     protected void sendName(int id, Iterator<SshFile> files) throws IOException {
-        Buffer buffer = new Buffer();
-        buffer.putByte((byte) SSH_FXP_NAME);
-        buffer.putInt(id);
-        int wpos = buffer.wpos();
-        buffer.putInt(0);
-        int nb = 0;
-        while (files.hasNext() && buffer.wpos() < MAX_PACKET_LENGTH) {
-            SshFile f = files.next();
-            buffer.putString(f.getName());
-            buffer.putString(getLongName(f)); // Format specified in the specs
-            writeAttrs(buffer, f, false);
-            nb++;
-        }
-        int oldpos = buffer.wpos();
-        buffer.wpos(wpos);
-        buffer.putInt(nb);
-        buffer.wpos(oldpos);
-        send(buffer);
+        int limit = getNameReplyLength();
+        // room for the entry passing the limit
+        Buffer buffer = bufferPool.acquire(limit + 1024);
+        try {
+            buffer.putByte((byte) SSH_FXP_NAME);
+            buffer.putInt(id);
+            int wpos = buffer.wpos();
+            buffer.putInt(0);
+            int nb = 0;
+            while (files.hasNext() && buffer.wpos() < limit && nb < readdirMaxEntries) {
+                SshFile f = files.next();
+                // read the attributes once for the long name and the attrs
+                Map<SshFile.Attribute, Object> attributes = files instanceof DirectoryHandle
+                        ? ((DirectoryHandle) files).getEntryAttributes(f) : readEntryAttributes(f);
+                buffer.putString(f.getName());
+                putLongName(buffer, f, attributes); // Format specified in the specs
+                writeAttrs(buffer, attributes);
+                nb++;
+            }
+            int oldpos = buffer.wpos();
+            buffer.wpos(wpos);
+            buffer.putInt(nb);
+            buffer.wpos(oldpos);
+            send(buffer);
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private static Map<SshFile.Attribute, Object> readEntryAttributes(SshFile f) throws IOException {
+        return readAttributes(f, false);
     }
 
-    private String getLongName(SshFile f) throws IOException {
-        return getLongName(f, true);
+    /**
+     * Reads the attributes with a single call, the file tells whether it exists.
+     *
+     * @throws FileNotFoundException if the file does not exist
+     */
+    private static Map<SshFile.Attribute, Object> readAttributes(SshFile f, boolean followLinks) throws IOException {
+        try {
+            return f.getAttributes(followLinks);
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(f.getAbsolutePath());
+        }
     }
 
-    private String getLongName(SshFile f, boolean sendAttrs) throws IOException {
-        Map<SshFile.Attribute, Object> attributes;
+    /**
+     * The length of a reply listing a directory, a few channel packets so that
+     * large directories take few round trips, but at most as much as a read
+     * reply once the client has been told the limits, and otherwise as much
+     * as any client accepts, leaving room for the entry passing the length.
+     */
+    private int getNameReplyLength() {
+        int packetSize = out instanceof ChannelOutputStream
+                ? ((ChannelOutputStream) out).getPacketSize() : MAX_PACKET_LENGTH;
+        long length = (long) packetSize * READDIR_PACKETS;
+        int max = limitsSent ? maxReadLength : MIN_CLIENT_PACKET_LENGTH - 1024;
+        return (int) Math.max(MAX_PACKET_LENGTH, Math.min(length, max));
+    }
+
+    private void putLongName(Buffer buffer, SshFile f, boolean sendAttrs) throws IOException {
         if (sendAttrs) {
-            attributes = f.getAttributes(false);
+            putLongName(buffer, f, f.getAttributes(false));
         } else {
-            attributes = new HashMap<SshFile.Attribute, Object>();
-            attributes.put(SshFile.Attribute.Owner, "owner");
-            attributes.put(SshFile.Attribute.Group, "group");
-            attributes.put(SshFile.Attribute.Size, (long) 0);
-            attributes.put(SshFile.Attribute.IsDirectory, false);
-            attributes.put(SshFile.Attribute.IsSymbolicLink, false);
-            attributes.put(SshFile.Attribute.IsRegularFile, false);
-            attributes.put(SshFile.Attribute.Permissions, EnumSet.noneOf(SshFile.Permission.class));
-            attributes.put(SshFile.Attribute.LastModifiedTime, (long) 0);
-        }
-        String username = (String) attributes.get(SshFile.Attribute.Owner);
-        if (username.length() > 8) {
-            username = username.substring(0, 8);
-        } else {
-            for (int i = username.length(); i < 8; i++) {
-                username = username + " ";
-            }
+            longNameEncoder.encode(buffer, f.getName(), false, false, 0, 1, "owner", "group", 0, 0);
         }
-        String group = (String) attributes.get(SshFile.Attribute.Group);
-        if (group.length() > 8) {
-            group = group.substring(0, 8);
-        } else {
-            for (int i = group.length(); i < 8; i++) {
-                group = group + " ";
-            }
-        }
-
-        long length = (Long) attributes.get(SshFile.Attribute.Size);
-        String lengthString = String.format("%1$8s", length);
-
-        boolean isDirectory = (Boolean) attributes.get(SshFile.Attribute.IsDirectory);
-        boolean isLink = (Boolean) attributes.get(SshFile.Attribute.IsSymbolicLink);
-        int perms = getPermissions(attributes);
-
-        StringBuilder sb = new StringBuilder();
-        sb.append(isDirectory ? "d" : isLink ? "l" : "-");
-        sb.append((perms & S_IRUSR) != 0 ? "r" : "-");
-        sb.append((perms & S_IWUSR) != 0 ? "w" : "-");
-        sb.append((perms & S_IXUSR) != 0 ? "x" : "-");
-        sb.append((perms & S_IRGRP) != 0 ? "r" : "-");
-        sb.append((perms & S_IWGRP) != 0 ? "w" : "-");
-        sb.append((perms & S_IXGRP) != 0 ? "x" : "-");
-        sb.append((perms & S_IROTH) != 0 ? "r" : "-");
-        sb.append((perms & S_IWOTH) != 0 ? "w" : "-");
-        sb.append((perms & S_IXOTH) != 0 ? "x" : "-");
-        sb.append("  ");
-        sb.append(attributes.containsKey(SshFile.Attribute.NLink)
-                ? attributes.get(SshFile.Attribute.NLink) : "1");
-        sb.append(" ");
-        sb.append(username);
-        sb.append(" ");
-        sb.append(group);
-        sb.append(" ");
-        sb.append(lengthString);
-        sb.append(" ");
-        sb.append(getUnixDate((Long) attributes.get(SshFile.Attribute.LastModifiedTime)));
-        sb.append(" ");
-        sb.append(f.getName());
-
-        return sb.toString();
+    }
+
+    private void putLongName(Buffer buffer, SshFile f, Map<SshFile.Attribute, Object> attributes) {
+        Object nlink = attributes.get(SshFile.Attribute.NLink);
+        longNameEncoder.encode(buffer, f.getName(),
+                (Boolean) attributes.get(SshFile.Attribute.IsDirectory),
+                (Boolean) attributes.get(SshFile.Attribute.IsSymbolicLink),
+                getPermissions(attributes),
+                nlink != null ? ((Number) nlink).longValue() : 1,
+                (String) attributes.get(SshFile.Attribute.Owner),
+                (String) attributes.get(SshFile.Attribute.Group),
+                (Long) attributes.get(SshFile.Attribute.Size),
+                (Long) attributes.get(SshFile.Attribute.LastModifiedTime));
     }
 
     protected Map<SshFile.Attribute, Object> getPermissions(int perms) {
@@ -1165,10 +2203,10 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
     }
 
     protected void writeAttrs(Buffer buffer, SshFile file, boolean followLinks) throws IOException {
-        if (!file.doesExist()) {
-            throw new FileNotFoundException(file.getAbsolutePath());
-        }
-        Map<SshFile.Attribute, Object> attributes = file.getAttributes(followLinks);
+        writeAttrs(buffer, readAttributes(file, followLinks));
+    }
+
+    protected void writeAttrs(Buffer buffer, Map<SshFile.Attribute, Object> attributes) {
         boolean isReg = getBool((Boolean) attributes.get(SshFile.Attribute.IsRegularFile));
         boolean isDir = getBool((Boolean) attributes.get(SshFile.Attribute.IsDirectory));
         boolean isLnk = getBool((Boolean) attributes.get(SshFile.Attribute.IsSymbolicLink));
@@ -1226,28 +2264,206 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
         return attrs;
     }
 
+    /**
+     * Copy a regular file within the server, letting the backend do it
+     * when it supports that.
+     */
+    protected void copyFile(SshFile src, SshFile dst) throws IOException {
+        // checked before anything is truncated
+        if (src.getAbsolutePath().equals(dst.getAbsolutePath())) {
+            throw new IOException("Source and destination are the same file");
+        }
+        if (dst.isDirectory()) {
+            throw new IOException("Destination is a directory " + dst.getAbsolutePath());
+        }
+        if (src instanceof CopyableSshFile && ((CopyableSshFile) src).copyTo(dst)) {
+            return;
+        }
+        if (dst.doesExist()) {
+            dst.truncate();
+        } else if (!dst.create()) {
+            throw new FileNotFoundException(dst.getAbsolutePath());
+        }
+        FileHandle in = new FileHandle(src, SSH_FXF_READ);
+        FileHandle out = new FileHandle(dst, SSH_FXF_WRITE);
+        try {
+            in.copyTo(0, 0, out, 0);
+        } finally {
+            try {
+                in.close();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Computes the check-file hash of a range of the file, see
+     * draft-ietf-secsh-filexfer-extensions-00 section 3.
+     *
+     * The first supported algorithm of the list is used. If a block size is
+     * given, one hash per block is returned, concatenated. The blocks of
+     * large files are hashed in parallel on the request executor if requests
+     * are pipelined and the file supports positional reads.
+     *
+     * @param length the number of bytes to hash, 0 for up to the end of the file
+     * @param blocksize the size of the hashed blocks, 0 for a single hash of the range
+     * @return the name of the used algorithm and the hash
+     */
     protected Object[] checkFileHash(FileHandle fh, String hashalgorithms, long offset, long length, int blocksize) throws IOException,
             NoSuchAlgorithmException, UnsupportedOperationException {
-        // XXX added as part of check-file (extended command for hashing), see above
-        // TODO support multiple hash algorithms
-        // TODO support hashing blocks of the file, not only the whole file
-        String hashalgorithm = hashalgorithms.split(",")[0];
-        if (offset != 0 || length != 0 || blocksize != 0) {
-            throw new UnsupportedOperationException("Only offset=0, length=0, blocksize=0 is supported");
-        }
-
-        MessageDigest digest = MessageDigest.getInstance(hashalgorithm);
-        byte[] buffer = new byte[Buffer.MAX_LEN];
-        int readLen = 0;
-        while (true) {
-            readLen = fh.read(buffer, offset);
-            if (readLen <= 0) {
+        String hashalgorithm = null;
+        MessageDigest digest = null;
+        for (String algorithm : hashalgorithms.split(",")) {
+            algorithm = algorithm.trim();
+            try {
+                digest = MessageDigest.getInstance(getDigestName(algorithm));
+                hashalgorithm = algorithm;
                 break;
+            } catch (NoSuchAlgorithmException e) {
+                log.debug("Unsupported check-file algorithm {}", algorithm);
+            }
+        }
+        if (digest == null) {
+            throw new NoSuchAlgorithmException("No supported algorithm in " + hashalgorithms);
+        }
+        if (blocksize != 0 && blocksize < MIN_CHECK_FILE_BLOCK_SIZE) {
+            throw new IOException("Block size must be at least " + MIN_CHECK_FILE_BLOCK_SIZE + ": " + blocksize);
+        }
+
+        // hash the data of pending writes too
+        fh.flush();
+        long size = fh.getFile().getSize();
+        // offset and length are uint64, a negative one is beyond any file
+        if (offset < 0 || offset > size) {
+            throw new IOException("Offset beyond end of file: " + Long.toUnsignedString(offset));
+        }
+        long end = length > 0 && length < size - offset ? offset + length : size;
+        long rangeLength = end - offset;
+
+        // hashes of whole files are remembered by backends supporting it
+        HashCachingSshFile cache = null;
+        String cacheKey = null;
+        long lastModified = 0;
+        if (offset == 0 && end == size && fh.getFile() instanceof HashCachingSshFile) {
+            cache = (HashCachingSshFile) fh.getFile();
+            cacheKey = blocksize == 0 ? hashalgorithm : hashalgorithm + "/" + blocksize;
+            lastModified = fh.getFile().getLastModified();
+            byte[] cached = cache.getCachedHash(cacheKey);
+            if (cached != null) {
+                log.debug("Using cached {} hash of {}", cacheKey, fh.getFile().getAbsolutePath());
+                return new Object[]{hashalgorithm, cached};
             }
-            offset += readLen;
-            digest.update(buffer, 0, readLen);
-        };
-        return new Object[]{hashalgorithm, digest.digest()};
+        }
+
+        byte[] hash = computeFileHash(fh, digest, offset, end, blocksize);
+        if (cache != null) {
+            cache.putCachedHash(cacheKey, size, lastModified, hash);
+        }
+        return new Object[]{hashalgorithm, hash};
+    }
+
+    private byte[] computeFileHash(final FileHandle fh, MessageDigest digest, final long offset, final long end,
+                                   final int blocksize) throws IOException, NoSuchAlgorithmException {
+        long rangeLength = end - offset;
+        if (blocksize == 0 || rangeLength <= blocksize) {
+            hashRange(fh, digest, offset, rangeLength, new byte[(int) Math.min(CHECK_FILE_BUFFER_SIZE, Math.max(rangeLength, 1))], false);
+            return digest.digest();
+        }
+
+        int digestLength = digest.getDigestLength();
+        long blocks = (rangeLength + blocksize - 1) / blocksize;
+        if (blocks * digestLength > maxPacketLength - 1024) {
+            throw new IOException("Too many blocks: " + blocks);
+        }
+        final byte[] hash = new byte[(int) blocks * digestLength];
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), (int) blocks);
+        Executor executor = requestExecutor;
+        if (executor != null && fh.getFile() instanceof RandomAccessSshFile && rangeLength >= PARALLEL_CHECK_FILE_SIZE && threads > 1) {
+            // positional reads on the shared channel are safe from several threads
+            fh.getReadChannel();
+            List<FutureTask<Void>> futures = new ArrayList<FutureTask<Void>>(threads);
+            for (int t = 0; t < threads; t++) {
+                final int first = (int) (blocks * t / threads);
+                final int last = (int) (blocks * (t + 1) / threads);
+                final MessageDigest d = MessageDigest.getInstance(digest.getAlgorithm());
+                FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        hashBlocks(fh, d, offset, end, blocksize, first, last, hash, true);
+                        return null;
+                    }
+                });
+                futures.add(task);
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // run below
+                }
+            }
+            // hash the parts no worker has started yet here, the session may use only a few workers
+            for (FutureTask<Void> task : futures) {
+                task.run();
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (InterruptedException e) {
+                    throw (IOException) new InterruptedIOException().initCause(e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException(e.getCause());
+                }
+            }
+        } else {
+            hashBlocks(fh, digest, offset, end, blocksize, 0, (int) blocks, hash, false);
+        }
+        return hash;
+    }
+
+    private static void hashBlocks(FileHandle fh, MessageDigest digest, long offset, long end, int blocksize,
+                                   int first, int last, byte[] hash, boolean direct) throws IOException {
+        byte[] data = new byte[Math.min(CHECK_FILE_BUFFER_SIZE, blocksize)];
+        int digestLength = digest.getDigestLength();
+        for (int i = first; i < last; i++) {
+            long start = offset + (long) i * blocksize;
+            hashRange(fh, digest, start, Math.min(blocksize, end - start), data, direct);
+            System.arraycopy(digest.digest(), 0, hash, i * digestLength, digestLength);
+        }
+    }
+
+    /**
+     * @param direct {@code true} to bypass the read ahead of the handle, for
+     *               reads of several threads at once
+     */
+    private static void hashRange(FileHandle fh, MessageDigest digest, long offset, long length, byte[] data,
+                                  boolean direct) throws IOException {
+        while (length > 0) {
+            int len = (int) Math.min(data.length, length);
+            int l = direct ? fh.readDirect(data, 0, len, offset) : fh.read(data, 0, len, offset);
+            if (l <= 0) {
+                throw new EOFException("File shrank while hashing");
+            }
+            digest.update(data, 0, l);
+            offset += l;
+            length -= l;
+        }
+    }
+
+    /**
+     * Maps the algorithm names of the check-file extension to the standard names.
+     */
+    private static String getDigestName(String algorithm) {
+        switch (algorithm) {
+            case "md5":    return "MD5";
+            case "sha1":   return "SHA-1";
+            case "sha224": return "SHA-224";
+            case "sha256": return "SHA-256";
+            case "sha384": return "SHA-384";
+            case "sha512": return "SHA-512";
+            default:       return algorithm;
+        }
     }
 
     protected void sendStatus(int id, int substatus, String msg) throws IOException {
@@ -1256,20 +2472,35 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
 
     protected void sendStatus(int id, int substatus, String msg, String lang) throws IOException {
         log.debug("Send SSH_FXP_STATUS (substatus={}, msg={})", substatus, msg);
-        Buffer buffer = new Buffer();
-        buffer.putByte((byte) SSH_FXP_STATUS);
-        buffer.putInt(id);
-        buffer.putInt(substatus);
-        buffer.putString(msg);
-        buffer.putString(lang);
-        send(buffer);
+        if (substatus != SSH_FX_OK && substatus != SSH_FX_EOF) {
+            SftpMetrics.Request request = CURRENT_REQUEST.get();
+            if (request != null) {
+                request.failed = true;
+            }
+        }
+        Buffer buffer = bufferPool.acquire(BufferPool.SMALL_SIZE);
+        try {
+            buffer.putByte((byte) SSH_FXP_STATUS);
+            buffer.putInt(id);
+            buffer.putInt(substatus);
+            buffer.putString(msg);
+            buffer.putString(lang);
+            send(buffer);
+        } finally {
+            bufferPool.release(buffer);
+        }
     }
 
     protected void send(Buffer buffer) throws IOException {
-        DataOutputStream dos = new DataOutputStream(out);
-        dos.writeInt(buffer.available());
-        dos.write(buffer.array(), buffer.rpos(), buffer.available());
-        dos.flush();
+        long start = System.nanoTime();
+        // replies of pipelined requests may be sent concurrently
+        synchronized (out) {
+            DataOutputStream dos = new DataOutputStream(out);
+            dos.writeInt(buffer.available());
+            dos.write(buffer.array(), buffer.rpos(), buffer.available());
+            dos.flush();
+        }
+        addSendTime(System.nanoTime() - start);
     }
 
     public void destroy() {
@@ -1293,6 +2524,10 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
 
         executors = null;
 
+        if (requestExecutor != null && threadPool == null) {
+            ((ExecutorService) requestExecutor).shutdownNow();
+        }
+
         if (!closed) {
             if (log.isDebugEnabled()) {
                 log.debug("destroy() - mark as closed");
@@ -1306,59 +2541,4 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
     	return this.root.getNormalizedView().getFile(path);
     }
 
-    private final static String[] MONTHS = { "Jan", "Feb", "Mar", "Apr", "May",
-            "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
-
-    /**
-     * Get unix style date string.
-     */
-    private final static String getUnixDate(long millis) {
-        if (millis < 0) {
-            return "------------";
-        }
-
-        StringBuffer sb = new StringBuffer(16);
-        Calendar cal = new GregorianCalendar();
-        cal.setTimeInMillis(millis);
-
-        // month
-        sb.append(MONTHS[cal.get(Calendar.MONTH)]);
-        sb.append(' ');
-
-        // day
-        int day = cal.get(Calendar.DATE);
-        if (day < 10) {
-            sb.append(' ');
-        }
-        sb.append(day);
-        sb.append(' ');
-
-        long sixMonth = 15811200000L; // 183L * 24L * 60L * 60L * 1000L;
-        long nowTime = System.currentTimeMillis();
-        if (Math.abs(nowTime - millis) > sixMonth) {
-
-            // year
-            int year = cal.get(Calendar.YEAR);
-            sb.append(' ');
-            sb.append(year);
-        } else {
-
-            // hour
-            int hh = cal.get(Calendar.HOUR_OF_DAY);
-            if (hh < 10) {
-                sb.append('0');
-            }
-            sb.append(hh);
-            sb.append(':');
-
-            // minute
-            int mm = cal.get(Calendar.MINUTE);
-            if (mm < 10) {
-                sb.append('0');
-            }
-            sb.append(mm);
-        }
-        return sb.toString();
-    }
-
 }
@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.server.sftp;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sshd.common.Session;
+import org.apache.sshd.common.util.ThreadUtils;
+
+/**
+ * Threads shared by all SFTP subsystems of a server.
+ *
+ * Each subsystem needs a thread reading its channel for as long as it is
+ * open, these come from a cached pool so that opening and closing channels
+ * reuses them. The requests themselves are executed on a fixed number of
+ * worker threads, see {@link SftpSubsystem#SftpSubsystem(SftpThreadPool)}.
+ * Reading ahead and writing behind the requests runs on a bounded number of
+ * storage threads, files opened while all of them are busy are read and
+ * written by the requests themselves.
+ * A session never occupies more than a share of the workers, further
+ * requests of the session wait in a queue of their own, so that one busy
+ * client does not stall the others. Once the pool is shut down, tasks are
+ * rejected, those waiting in the queue of a session are handed to
+ * {@link RejectableTask#rejected} if they implement it.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class SftpThreadPool {
+
+    private static final Session.AttributeKey<SessionExecutor> SESSION_EXECUTOR = new Session.AttributeKey<SessionExecutor>();
+    // enough to hide the latency of content provider calls without flooding the provider
+    private static final int ATTRIBUTE_THREADS = 4;
+
+    /**
+     * A task which must learn that it will not be executed, e.g. because it
+     * holds resources or a client waits for it.
+     */
+    public interface RejectableTask extends Runnable {
+        void rejected(RejectedExecutionException e);
+    }
+
+    private final ThreadPoolExecutor readers;
+    private final ThreadPoolExecutor workers;
+    private final ThreadPoolExecutor attributes;
+    private final ExecutorService storage;
+    private final int storageThreads;
+    private final int maxWorkersPerSession;
+    private final AtomicInteger deferred = new AtomicInteger();
+
+    /**
+     * A pool with one worker per available processor.
+     */
+    public SftpThreadPool() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param workers number of threads executing requests, each session
+     *                may use half of them
+     */
+    public SftpThreadPool(int workers) {
+        this(workers, (workers + 1) / 2);
+    }
+
+    /**
+     * @param workers              number of threads executing requests
+     * @param maxWorkersPerSession number of those threads a single session may use at a time
+     */
+    public SftpThreadPool(int workers, int maxWorkersPerSession) {
+        this(workers, maxWorkersPerSession, workers);
+    }
+
+    /**
+     * @param workers              number of threads executing requests
+     * @param maxWorkersPerSession number of those threads a single session may use at a time
+     * @param storageThreads       number of threads reading ahead and writing behind
+     *                             the requests of all sessions
+     */
+    public SftpThreadPool(int workers, int maxWorkersPerSession, int storageThreads) {
+        this.readers = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                60L, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                new ThreadUtils.SshdThreadFactory("sftp-reader"));
+        this.workers = new ThreadPoolExecutor(workers, workers,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadUtils.SshdThreadFactory("sftp-worker"));
+        this.maxWorkersPerSession = Math.max(1, maxWorkersPerSession);
+        this.attributes = new ThreadPoolExecutor(ATTRIBUTE_THREADS, ATTRIBUTE_THREADS,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadUtils.SshdThreadFactory("sftp-attributes"));
+        this.attributes.allowCoreThreadTimeOut(true);
+        this.storageThreads = Math.max(1, storageThreads);
+        this.storage = ThreadUtils.newBoundedCachedThreadPool("sftp-storage", this.storageThreads);
+    }
+
+    /**
+     * @return the executor running the read loops of the subsystems
+     */
+    public ExecutorService getReaderExecutor() {
+        return readers;
+    }
+
+    /**
+     * @return the executor reading ahead of sequential reads of files. These
+     *         tasks mostly wait for storage, so they have threads of their own
+     *         rather than taking workers away from requests. It rejects tasks
+     *         while all its threads are busy.
+     */
+    public Executor getReadAheadExecutor() {
+        return storage;
+    }
+
+    /**
+     * @return the executor writing behind SSH_FXP_WRITE requests, the one of
+     *         the read ahead
+     */
+    public Executor getWriteBehindExecutor() {
+        return storage;
+    }
+
+    /**
+     * @return the largest number of files read ahead or written behind at once
+     */
+    public int getStorageThreads() {
+        return storageThreads;
+    }
+
+    /**
+     * @return the small pool fetching the attributes of directory entries
+     *         of slow file systems ahead of READDIR replies
+     */
+    public ExecutorService getAttributeExecutor() {
+        return attributes;
+    }
+
+    /**
+     * @return the executor for the requests of the given session
+     */
+    public Executor getSessionExecutor(Session session) {
+        synchronized (session) {
+            SessionExecutor executor = session.getAttribute(SESSION_EXECUTOR);
+            if (executor == null) {
+                executor = new SessionExecutor();
+                session.setAttribute(SESSION_EXECUTOR, executor);
+            }
+            return executor;
+        }
+    }
+
+    public void shutdown() {
+        readers.shutdownNow();
+        workers.shutdownNow();
+        attributes.shutdownNow();
+        storage.shutdownNow();
+    }
+
+    /**
+     * @return number of channels currently being read
+     */
+    public int getActiveReaders() {
+        return readers.getActiveCount();
+    }
+
+    public int getWorkers() {
+        return workers.getMaximumPoolSize();
+    }
+
+    /**
+     * @return number of workers currently executing a request
+     */
+    public int getActiveWorkers() {
+        return workers.getActiveCount();
+    }
+
+    /**
+     * @return number of requests waiting for a worker, including those
+     *         held back because their session already uses its share
+     */
+    public int getQueuedRequests() {
+        return workers.getQueue().size() + deferred.get();
+    }
+
+    public long getCompletedRequests() {
+        return workers.getCompletedTaskCount();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName()
+                + "[readers=" + getActiveReaders()
+                + ", workers=" + getActiveWorkers() + "/" + getWorkers()
+                + ", queued=" + getQueuedRequests()
+                + ", completed=" + getCompletedRequests()
+                + "]";
+    }
+
+    /**
+     * Passes the tasks of one session to the workers, at most
+     * {@link #maxWorkersPerSession} at a time.
+     */
+    private class SessionExecutor implements Executor {
+        private final Queue<Runnable> queue = new ArrayDeque<Runnable>();
+        private int running;
+
+        public void execute(Runnable task) {
+            synchronized (this) {
+                if (running >= maxWorkersPerSession) {
+                    queue.add(task);
+                    deferred.incrementAndGet();
+                    return;
+                }
+                running++;
+            }
+            try {
+                submit(task);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    running--;
+                }
+                rejectQueued(e);
+                throw e;
+            }
+        }
+
+        private void submit(final Runnable task) {
+            workers.execute(new Runnable() {
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        next();
+                    }
+                }
+            });
+        }
+
+        private void next() {
+            Runnable task;
+            synchronized (this) {
+                task = queue.poll();
+                if (task == null) {
+                    running--;
+                    return;
+                }
+            }
+            deferred.decrementAndGet();
+            try {
+                submit(task);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    running--;
+                }
+                reject(task, e);
+                rejectQueued(e);
+            }
+        }
+
+        private void rejectQueued(RejectedExecutionException e) {
+            while (true) {
+                Runnable task;
+                synchronized (this) {
+                    task = queue.poll();
+                    if (task == null) {
+                        return;
+                    }
+                }
+                deferred.decrementAndGet();
+                reject(task, e);
+            }
+        }
+
+        private void reject(Runnable task, RejectedExecutionException e) {
+            if (task instanceof RejectableTask) {
+                ((RejectableTask) task).rejected(e);
+            }
+        }
+    }
+}